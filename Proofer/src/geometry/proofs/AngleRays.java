@@ -0,0 +1,179 @@
+package geometry.proofs;
+
+import geometry.Vec2;
+import geometry.shapes.Angle;
+import geometry.shapes.Segment.Slope;
+import geometry.shapes.Vertex;
+
+import util.Utils;
+
+/**
+ * The canonical form of an {@link Angle}: its center vertex and the two rays that its
+ * sides lie on. A ray is the direction from the center, so all of the angles that share
+ * a center and whose sides lie on the same two rays are angle synonyms, no matter how long
+ * their sides are (for example, if D lies on BA, then ABC and DBC are synonyms).
+ * <p>
+ * Two angles have equal {@link AngleRays} if and only if they are synonyms, so synonyms
+ * can be found with a hash lookup. Directions are compared the same way as
+ * {@link Slope#equals(Object)} compares slopes (rounded to 4 decimal places, with all
+ * vertical slopes being equal), plus the side of the center that the ray points to.
+ */
+public final class AngleRays {
+
+	private final char center;
+	// The two rays, in canonical order (the order of the sides does not matter)
+	private final Ray ray0;
+	private final Ray ray1;
+
+	private AngleRays(char center, Ray ray0, Ray ray1) {
+		this.center = center;
+		if (ray0.compareTo(ray1) <= 0) {
+			this.ray0 = ray0;
+			this.ray1 = ray1;
+		} else {
+			this.ray0 = ray1;
+			this.ray1 = ray0;
+		}
+	}
+
+	/**
+	 * Get the canonical form of the given {@link Angle}.
+	 * @param angle the angle
+	 * @return the canonical form, or null if one of the angle's outer vertices lies on
+	 * its center (the angle has no direction)
+	 */
+	public static AngleRays of(Angle angle) {
+		Vertex center = angle.getVertices().get(1);
+		Ray ray0 = Ray.of(center.getCenter(), angle.getVertices().get(0).getCenter());
+		Ray ray1 = Ray.of(center.getCenter(), angle.getVertices().get(2).getCenter());
+		if (ray0 == null || ray1 == null)
+			return null;
+		return new AngleRays(center.getNameChar(), ray0, ray1);
+	}
+
+	/**
+	 * Get whether each side of the first {@link Angle} is at most as long as the side of
+	 * the second angle that lies on the same ray (the first angle lies on top of the second).
+	 * NOTE: the angles must be synonyms.
+	 */
+	public static boolean isWithin(Angle a, Angle b) {
+		Vec2 center = a.getCenter();
+		Vec2 a0 = a.getVertices().get(0).getCenter();
+		Vec2 a1 = a.getVertices().get(2).getCenter();
+		Vec2 b0 = b.getVertices().get(0).getCenter();
+		Vec2 b1 = b.getVertices().get(2).getCenter();
+		// Pair up the sides that lie on the same ray
+		if (!Ray.of(center, a0).equals(Ray.of(center, b0))) {
+			Vec2 temp = b0;
+			b0 = b1;
+			b1 = temp;
+		}
+		return Vec2.dist(center, a0) <= Vec2.dist(center, b0)
+				&& Vec2.dist(center, a1) <= Vec2.dist(center, b1);
+	}
+
+	/**
+	 * Get the rays of the angle that is vertical to the angles with these rays (both rays
+	 * point the other way).
+	 */
+	public AngleRays getVertical() {
+		return new AngleRays(center, ray0.getOpposite(), ray1.getOpposite());
+	}
+
+	/**
+	 * Get the rays of the two angles that form a linear pair with the angles with these
+	 * rays (they share one ray, and the other ray points the other way).
+	 */
+	public AngleRays[] getLinearPairs() {
+		return new AngleRays[] {
+				new AngleRays(center, ray0, ray1.getOpposite()),
+				new AngleRays(center, ray0.getOpposite(), ray1)
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof AngleRays))
+			return false;
+		AngleRays other = (AngleRays) o;
+		return center == other.center && ray0.equals(other.ray0) && ray1.equals(other.ray1);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 17;
+		result = 31 * result + center;
+		result = 31 * result + ray0.hashCode();
+		result = 31 * result + ray1.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return center + "[" + ray0 + ", " + ray1 + "]";
+	}
+
+	/**
+	 * The direction from a center point: a (rounded) slope, and the side of the center
+	 * that the direction points to.
+	 */
+	private static final class Ray implements Comparable<Ray> {
+		// The rounded slope (infinity if the ray is vertical)
+		private final float slope;
+		// Whether the ray points to the right (or up, if it is vertical)
+		private final boolean positive;
+
+		private Ray(float slope, boolean positive) {
+			this.slope = slope;
+			this.positive = positive;
+		}
+
+		/**
+		 * Get the ray that goes from the given center through the given point, or null if
+		 * the point lies on the center.
+		 */
+		public static Ray of(Vec2 center, Vec2 point) {
+			final float dx = point.getX() - center.getX();
+			final float dy = point.getY() - center.getY();
+			if (dx == 0 && dy == 0)
+				return null;
+			if (dx == 0)
+				return new Ray(Float.POSITIVE_INFINITY, dy > 0);
+			return new Ray(Utils.round(dy / dx, 4), dx > 0);
+		}
+
+		/**
+		 * Get the ray that points in the opposite direction.
+		 */
+		public Ray getOpposite() {
+			return new Ray(slope, !positive);
+		}
+
+		@Override
+		public int compareTo(Ray other) {
+			final int result = Float.compare(slope, other.slope);
+			return result != 0 ? result : Boolean.compare(positive, other.positive);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Ray))
+				return false;
+			return compareTo((Ray) o) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Float.hashCode(slope) + Boolean.hashCode(positive);
+		}
+
+		@Override
+		public String toString() {
+			return (positive ? "+" : "-") + slope;
+		}
+	}
+}
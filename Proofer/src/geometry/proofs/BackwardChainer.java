@@ -0,0 +1,713 @@
+package geometry.proofs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import geometry.shapes.Angle;
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+
+import static geometry.proofs.FigureRelationType.CONGRUENT;
+import static geometry.proofs.FigureRelationType.SIMILAR;
+import static geometry.proofs.FigureRelationType.RIGHT;
+import static geometry.proofs.FigureRelationType.ISOSCELES;
+import static geometry.proofs.FigureRelationType.PERPENDICULAR;
+import static geometry.proofs.FigureRelationType.PARALLEL;
+import static geometry.proofs.FigureRelationType.SUPPLEMENTARY;
+import static geometry.proofs.FigureRelationType.COMPLEMENTARY;
+
+/**
+ * Proves a goal {@link FigureRelation} by working backwards from it: for each theorem
+ * that could yield the goal, the {@link FigureRelation}s the theorem requires become
+ * subgoals, which are proven the same way. Only the subgoals that could lead to the goal
+ * are ever expanded.
+ * <p>
+ * Proven relations are added to the {@link Diagram} with the same reasons and parents
+ * that the forward rules of the {@link ProofSolver} would give them, so the traceback of
+ * the goal has the same format.
+ * <p>
+ * Subgoals that are being proven, or that failed, are remembered so that each subgoal is
+ * only expanded once per call to {@link BackwardChainer#prove(FigureRelation)}. A subgoal
+ * can fail only because it depends on one of its ancestors, so the caller should call
+ * {@link BackwardChainer#prove(FigureRelation)} again as long as new relations are added.
+ */
+public class BackwardChainer {
+
+	private ProofSolver solver;
+	private Diagram diagram;
+	/** Subgoals that are currently being proven (used to break cycles) */
+	private Set<FigureRelation> inProgress;
+	/** Subgoals that could not be proven */
+	private Set<FigureRelation> failed;
+	/*
+	 * The figures of the diagram don't change while proving, so the parts of the
+	 * triangles and the lines of the angles are only looked up once
+	 */
+	private Map<Triangle, TriangleParts> triangleParts;
+	private Map<Figure, List<Triangle>> trianglesByPart;
+	private Map<Angle, Segment[]> angleLines;
+
+	public BackwardChainer(ProofSolver solver, Diagram diagram) {
+		this.solver = solver;
+		this.diagram = diagram;
+		inProgress = new HashSet<>();
+		failed = new HashSet<>();
+		triangleParts = new HashMap<>();
+		trianglesByPart = new HashMap<>();
+		for (Triangle tri : diagram.getFiguresOfType(Triangle.class)) {
+			TriangleParts parts = new TriangleParts(tri);
+			triangleParts.put(tri, parts);
+			for (int i = 0; i < 3; i++) {
+				for (Figure part : new Figure[] { parts.angles[i], parts.sides[i] }) {
+					if (part == null)
+						continue;
+					List<Triangle> list = trianglesByPart.get(part);
+					if (list == null) {
+						list = new ArrayList<>(2);
+						trianglesByPart.put(part, list);
+					}
+					list.add(tri);
+				}
+			}
+		}
+		angleLines = new HashMap<>();
+	}
+
+	/**
+	 * Try to prove the given goal.
+	 * @param goal the goal
+	 * @return whether the goal is contained in the {@link Diagram}
+	 */
+	public boolean prove(FigureRelation goal) {
+		failed.clear();
+		return prove(goal.getRelationType(), goal.getFigure0(), goal.getFigure1());
+	}
+
+	private boolean prove(FigureRelationType type, Figure f0, Figure f1) {
+		solver.checkLimits();
+		if (f0 == null || (f1 == null && !FigureRelationType.isSingleFigureRelationType(type)))
+			return false;
+		if (diagram.getFigureRelation(type, f0, f1) != null)
+			return true;
+
+		FigureRelation query = new FigureRelation(type, f0, f1);
+		if (failed.contains(query) || !inProgress.add(query))
+			return false;
+
+		try {
+			switch (type) {
+			case CONGRUENT:
+				if (f0 instanceof Triangle)
+					proveCongruentTriangles((Triangle) f0, (Triangle) f1);
+				else
+					proveCongruentParts(f0, f1);
+				break;
+			case SIMILAR:
+				proveSimilarTriangles((Triangle) f0, (Triangle) f1);
+				break;
+			case ISOSCELES:
+				proveIsoscelesTriangle((Triangle) f0);
+				break;
+			case RIGHT:
+				proveRightAngle((Angle) f0);
+				break;
+			case PERPENDICULAR:
+				provePerpendicularSegments((Segment) f0, (Segment) f1);
+				break;
+			case PARALLEL:
+				proveParallelSegments((Segment) f0, (Segment) f1);
+				break;
+			case SUPPLEMENTARY:
+			case COMPLEMENTARY:
+				proveSuppOrCompAngles(type, (Angle) f0, (Angle) f1);
+				break;
+			default:
+				// Other relations (midpoints, bisectors) can only be given
+				break;
+			}
+		} finally {
+			inProgress.remove(query);
+		}
+
+		if (diagram.getFigureRelation(type, f0, f1) != null)
+			return true;
+		failed.add(query);
+		return false;
+	}
+
+	/**
+	 * Add the given proven {@link FigureRelation} to the {@link Diagram}, and apply
+	 * the {@link ProofSolver}'s handlers to it (and to everything it implies).
+	 */
+	private void addFigureRelation(FigureRelation rel) {
+		diagram.addFigureRelation(rel);
+		solver.handleNewFigureRelations();
+	}
+
+	/*
+	 * CONGRUENCE
+	 */
+
+	/**
+	 * Try to prove that two segments or two angles are congruent. Any pair of figures from
+	 * their two congruence classes will do, since congruence is transitive.
+	 */
+	private void proveCongruentParts(Figure f0, Figure f1) {
+		List<Figure> class0 = new ArrayList<>(diagram.getEquivalentFigures(CONGRUENT, f0));
+		List<Figure> class1 = new ArrayList<>(diagram.getEquivalentFigures(CONGRUENT, f1));
+		for (Figure a : class0) {
+			for (Figure b : class1) {
+				if (proveCongruentPartsDirectly(a, b)
+						|| diagram.getFigureRelation(CONGRUENT, f0, f1) != null)
+					return;
+			}
+		}
+	}
+
+	private boolean proveCongruentPartsDirectly(Figure f0, Figure f1) {
+		// Corresponding parts of congruent triangles
+		if (proveByCongruentTriangles(f0, f1))
+			return true;
+		// Isosceles triangle theorem
+		if (proveByIsoscelesTriangle(f0, f1))
+			return true;
+		if (f0 instanceof Angle) {
+			Angle a0 = (Angle) f0;
+			Angle a1 = (Angle) f1;
+			// Angles supplementary/complementary to congruent angles
+			if (proveBySuppOrCompAngles(SUPPLEMENTARY, a0, a1)
+					|| proveBySuppOrCompAngles(COMPLEMENTARY, a0, a1))
+				return true;
+			// Corresponding angles of similar triangles
+			if (proveBySimilarTriangles(a0, a1))
+				return true;
+			// All right angles are congruent
+			if (prove(RIGHT, a0, null) && prove(RIGHT, a1, null))
+				return diagram.getFigureRelation(CONGRUENT, a0, a1) != null;
+		}
+		return false;
+	}
+
+	/**
+	 * Try to prove that the given parts are congruent by proving that two triangles
+	 * containing them are congruent, with the parts corresponding to each other.
+	 */
+	private boolean proveByCongruentTriangles(Figure f0, Figure f1) {
+		for (Triangle t0 : getTrianglesContaining(f0)) {
+			for (Triangle t1 : getTrianglesContaining(f1)) {
+				if (t0.equals(t1))
+					continue;
+				for (String corr : getCorrespondences(t0, t1)) {
+					if (!correspond(t0, t1, corr, f0, f1))
+						continue;
+					FigureRelation triRel = getCongruentTrianglesRelation(t0, t1, corr);
+					if (triRel == null)
+						continue;
+					addFigureRelation(triRel);
+					// The parts correspond in the proven correspondence, even if the
+					// triangles were already known to be congruent
+					if (diagram.getFigureRelation(CONGRUENT, f0, f1) == null) {
+						FigureRelation rel = new FigureRelation(CONGRUENT, f0, f1);
+						rel.addParent(triRel);
+						rel.setReason(f0 instanceof Angle ?
+								ProofReasons.CORR_ANGLES_CONG_TRIANGLES
+								: ProofReasons.CORR_SEGMENTS);
+						addFigureRelation(rel);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void proveCongruentTriangles(Triangle t0, Triangle t1) {
+		for (String corr : getCorrespondences(t0, t1)) {
+			FigureRelation triRel = getCongruentTrianglesRelation(t0, t1, corr);
+			if (triRel != null) {
+				addFigureRelation(triRel);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Try to prove that the two given triangles are congruent, with the vertices of the
+	 * first corresponding to the given vertices of the second (SSS, SAS or ASA).
+	 * @param corr the vertices of the second triangle, in the order of the vertices of
+	 * the first triangle
+	 * @return the (new) {@link FigureRelation} making the triangles congruent, or
+	 * null if it could not be proven
+	 */
+	private FigureRelation getCongruentTrianglesRelation(Triangle t0, Triangle t1,
+			String corr) {
+		final String name0 = t0.getName();
+		// Each pair of corresponding parts of the two triangles (sides opposite to, and
+		// angles at each vertex)
+		Figure[][] sides = new Figure[3][];
+		Figure[][] angles = new Figure[3][];
+		for (int i = 0; i < 3; i++) {
+			sides[i] = new Figure[] { getOppositeSide(t0, name0.charAt(i)),
+					getOppositeSide(t1, corr.charAt(i)) };
+			angles[i] = new Figure[] { getAngle(t0, name0.charAt(i)),
+					getAngle(t1, corr.charAt(i)) };
+		}
+
+		// The combinations of parts that make the triangles congruent
+		List<Figure[][]> combos = new ArrayList<>(7);
+		List<ProofReasons> reasons = new ArrayList<>(7);
+		// SSS
+		combos.add(new Figure[][] { sides[0], sides[1], sides[2] });
+		reasons.add(ProofReasons.SSS);
+		for (int i = 0; i < 3; i++) {
+			final int j = (i + 1) % 3, k = (i + 2) % 3;
+			// SAS: the angle at vertex i and the two sides adjacent to it
+			combos.add(new Figure[][] { sides[j], sides[k], angles[i] });
+			reasons.add(ProofReasons.SAS);
+			// ASA: the side opposite vertex i and the two angles adjacent to it
+			combos.add(new Figure[][] { angles[j], angles[k], sides[i] });
+			reasons.add(ProofReasons.ASA);
+		}
+
+		// Try the combinations whose parts are already known to be congruent first
+		Integer[] order = new Integer[combos.size()];
+		final int[] knownCounts = new int[combos.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			for (Figure[] pair : combos.get(i)) {
+				if (pair[0] != null && pair[1] != null
+						&& diagram.getFigureRelation(CONGRUENT, pair[0], pair[1]) != null)
+					++knownCounts[i];
+			}
+		}
+		Arrays.sort(order, (a, b) -> knownCounts[b] - knownCounts[a]);
+
+		combos:
+		for (int i : order) {
+			List<FigureRelation> parents = new ArrayList<>(3);
+			for (Figure[] pair : combos.get(i)) {
+				if (!prove(CONGRUENT, pair[0], pair[1]))
+					continue combos;
+				parents.add(diagram.getFigureRelation(CONGRUENT, pair[0], pair[1]));
+			}
+			FigureRelation rel = new FigureRelation(CONGRUENT, t0, t1);
+			rel.addParents(parents);
+			rel.setReason(reasons.get(i));
+			return rel;
+		}
+		return null;
+	}
+
+	/*
+	 * ISOSCELES TRIANGLES
+	 */
+
+	/**
+	 * Try to prove that the given parts (two sides or two angles of the same triangle)
+	 * are congruent by the isosceles triangle theorem (or its opposite).
+	 */
+	private boolean proveByIsoscelesTriangle(Figure f0, Figure f1) {
+		for (Triangle tri : getTrianglesContaining(f0)) {
+			if (!containsPart(tri, f1))
+				continue;
+			final String triName = tri.getName();
+			if (f0 instanceof Segment) {
+				// The angles opposite the segments must be congruent
+				Angle a0 = getAngle(tri, ProofUtils.getOppositeVertex(triName,
+						f0.getName()).charAt(0));
+				Angle a1 = getAngle(tri, ProofUtils.getOppositeVertex(triName,
+						f1.getName()).charAt(0));
+				if (prove(CONGRUENT, a0, a1)) {
+					addIsoscelesTriangle(tri, diagram.getFigureRelation(CONGRUENT, a0, a1),
+							ProofReasons.OPP_ISOSCELES, f0, f1,
+							ProofReasons.ISOSCELES_OPP_SEGMENTS);
+					return true;
+				}
+			} else {
+				// The segments opposite the angles must be congruent
+				Segment s0 = getOppositeSide(tri, ((Angle) f0).getNameShort().charAt(0));
+				Segment s1 = getOppositeSide(tri, ((Angle) f1).getNameShort().charAt(0));
+				if (prove(CONGRUENT, s0, s1)) {
+					addIsoscelesTriangle(tri, diagram.getFigureRelation(CONGRUENT, s0, s1),
+							ProofReasons.ISOSCELES, f0, f1, ProofReasons.ISOSCELES_OPP_ANGLES);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void proveIsoscelesTriangle(Triangle tri) {
+		Segment[] sides = tri.getSides();
+		Angle[] angles = new Angle[3];
+		for (int i = 0; i < 3; i++) {
+			angles[i] = getAngle(tri, tri.getName().charAt(i));
+		}
+		for (int i = 0; i < 2; i++) {
+			for (int j = i + 1; j < 3; j++) {
+				if (proveByIsoscelesTriangle(sides[i], sides[j])
+						|| proveByIsoscelesTriangle(angles[i], angles[j]))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Make the given triangle isosceles, and make the given parts congruent.
+	 */
+	private void addIsoscelesTriangle(Triangle tri, FigureRelation parent,
+			ProofReasons isoscelesReason, Figure part0, Figure part1, ProofReasons partsReason) {
+		FigureRelation isoscelesRel = new FigureRelation(ISOSCELES, tri, null);
+		isoscelesRel.setReason(isoscelesReason);
+		isoscelesRel.addParent(parent);
+		addFigureRelation(isoscelesRel);
+
+		FigureRelation rel = new FigureRelation(CONGRUENT, part0, part1);
+		rel.addParent(isoscelesRel);
+		rel.setReason(partsReason);
+		addFigureRelation(rel);
+	}
+
+	/*
+	 * SIMILAR TRIANGLES
+	 */
+
+	/**
+	 * Try to prove that the given angles are congruent by proving that two triangles
+	 * containing them are similar, with the angles corresponding to each other.
+	 */
+	private boolean proveBySimilarTriangles(Angle a0, Angle a1) {
+		for (Triangle t0 : getTrianglesContaining(a0)) {
+			for (Triangle t1 : getTrianglesContaining(a1)) {
+				if (t0.equals(t1))
+					continue;
+				for (String corr : getCorrespondences(t0, t1)) {
+					if (!correspond(t0, t1, corr, a0, a1))
+						continue;
+					FigureRelation simRel = getSimilarTrianglesRelation(t0, t1, corr, a0, a1);
+					if (simRel == null)
+						continue;
+					addFigureRelation(simRel);
+					if (diagram.getFigureRelation(CONGRUENT, a0, a1) == null) {
+						FigureRelation rel = new FigureRelation(CONGRUENT, a0, a1);
+						rel.addParent(simRel);
+						rel.setReason(ProofReasons.CORR_ANGLES_SIMILAR_TRIANGLES);
+						addFigureRelation(rel);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void proveSimilarTriangles(Triangle t0, Triangle t1) {
+		for (String corr : getCorrespondences(t0, t1)) {
+			FigureRelation simRel = getSimilarTrianglesRelation(t0, t1, corr, null, null);
+			if (simRel != null) {
+				addFigureRelation(simRel);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Try to prove that the two given triangles are similar (two pairs of congruent
+	 * corresponding angles), with the vertices of the first corresponding to the given
+	 * vertices of the second.
+	 * @param exclude0 an angle of the first triangle that may not be used (or null)
+	 * @param exclude1 the angle of the second triangle corresponding to exclude0 (or null)
+	 * @return the (new) {@link FigureRelation} making the triangles similar, or
+	 * null if it could not be proven
+	 */
+	private FigureRelation getSimilarTrianglesRelation(Triangle t0, Triangle t1, String corr,
+			Angle exclude0, Angle exclude1) {
+		final String name0 = t0.getName();
+		List<FigureRelation> parents = new ArrayList<>(2);
+		for (int i = 0; i < 3 && parents.size() < 2; i++) {
+			Angle a0 = getAngle(t0, name0.charAt(i));
+			Angle a1 = getAngle(t1, corr.charAt(i));
+			// Don't use the angles that we're trying to prove congruent
+			if (exclude0 != null && a0.equals(exclude0) && a1.equals(exclude1))
+				continue;
+			if (prove(CONGRUENT, a0, a1))
+				parents.add(diagram.getFigureRelation(CONGRUENT, a0, a1));
+		}
+		if (parents.size() < 2)
+			return null;
+		FigureRelation rel = new FigureRelation(SIMILAR, t0, t1);
+		rel.addParents(parents);
+		rel.setReason(ProofReasons.SIMILAR);
+		return rel;
+	}
+
+	/*
+	 * SUPPLEMENTARY AND COMPLEMENTARY ANGLES
+	 */
+
+	/**
+	 * Try to prove that the given angles are congruent because they are supplementary
+	 * (or complementary) to a pair of congruent angles.
+	 */
+	private boolean proveBySuppOrCompAngles(FigureRelationType suppOrComp, Angle a0,
+			Angle a1) {
+		for (FigureRelation rel0 : new ArrayList<>(diagram.getFigureRelations(suppOrComp, a0))) {
+			Figure friend0 = getOtherFigure(rel0, a0);
+			for (FigureRelation rel1 : new ArrayList<>(
+					diagram.getFigureRelations(suppOrComp, a1))) {
+				Figure friend1 = getOtherFigure(rel1, a1);
+				if (!prove(CONGRUENT, friend0, friend1))
+					continue;
+				if (diagram.getFigureRelation(CONGRUENT, a0, a1) == null) {
+					FigureRelation rel = new FigureRelation(CONGRUENT, a0, a1);
+					rel.addParents(Arrays.asList(
+							diagram.getFigureRelation(CONGRUENT, friend0, friend1), rel0, rel1));
+					rel.setReason(suppOrComp == SUPPLEMENTARY ?
+							ProofReasons.SUPP_ANGLES_TO_CONG_ANGLES
+							: ProofReasons.COMP_ANGLES_TO_CONG_ANGLES);
+					addFigureRelation(rel);
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Try to prove that the given angles are supplementary (or complementary), because
+	 * one of them is congruent to an angle that is supplementary (or complementary) to
+	 * the other.
+	 */
+	private void proveSuppOrCompAngles(FigureRelationType suppOrComp, Angle a0, Angle a1) {
+		for (Angle[] angles : new Angle[][] { { a0, a1 }, { a1, a0 } }) {
+			for (FigureRelation rel : new ArrayList<>(
+					diagram.getFigureRelations(suppOrComp, angles[1]))) {
+				Figure friend = getOtherFigure(rel, angles[1]);
+				if (!prove(CONGRUENT, angles[0], friend))
+					continue;
+				if (diagram.getFigureRelation(suppOrComp, a0, a1) == null) {
+					FigureRelation newRel = new FigureRelation(suppOrComp, a0, a1);
+					newRel.addParents(Arrays.asList(rel,
+							diagram.getFigureRelation(CONGRUENT, angles[0], friend)));
+					newRel.setReason(suppOrComp == SUPPLEMENTARY ?
+							ProofReasons.SUPP_ANGLE_TO_CONG_ANGLES
+							: ProofReasons.COMP_ANGLE_TO_CONG_ANGLES);
+					addFigureRelation(newRel);
+				}
+				return;
+			}
+		}
+	}
+
+	/*
+	 * RIGHT ANGLES, PERPENDICULAR AND PARALLEL SEGMENTS
+	 */
+
+	private void proveRightAngle(Angle angle) {
+		// Angles congruent to a right angle are right angles (all right angles are
+		// congruent, so any right angle will do)
+		FigureRelation rightRel = diagram.getFirstRelationOfType(RIGHT);
+		if (rightRel != null && prove(CONGRUENT, angle, rightRel.getFigure0())) {
+			if (diagram.getFigureRelation(RIGHT, angle, null) == null) {
+				FigureRelation rel = new FigureRelation(RIGHT, angle, null);
+				rel.addParents(Arrays.asList(
+						diagram.getFigureRelation(CONGRUENT, angle, rightRel.getFigure0()),
+						rightRel));
+				rel.setReason(ProofReasons.TRANSITIVE);
+				addFigureRelation(rel);
+			}
+			return;
+		}
+		// Perpendicular segments make right angles
+		Segment[] lines = getLines(angle);
+		prove(PERPENDICULAR, lines[0], lines[1]);
+	}
+
+	/**
+	 * Try to prove that the given segments are perpendicular, by proving that one of the
+	 * angles between them is a right angle.
+	 */
+	private void provePerpendicularSegments(Segment s0, Segment s1) {
+		for (Angle angle : diagram.getFiguresOfType(Angle.class)) {
+			Segment[] lines = getLines(angle);
+			Segment side0 = lines[0];
+			Segment side1 = lines[1];
+			if (side0 == null || side1 == null || !((side0.equals(s0) && side1.equals(s1))
+					|| (side0.equals(s1) && side1.equals(s0))))
+				continue;
+			// Don't try to prove the right angle using the segments we're trying to prove
+			// perpendicular
+			if (diagram.getFigureRelation(RIGHT, angle, null) == null
+					&& !proveRightAngleWithoutPerpendicular(angle))
+				continue;
+			FigureRelation perpRel = new PerpendicularFigureRelation(side0, side1,
+					angle.getNameShort().charAt(0));
+			perpRel.addParent(diagram.getFigureRelation(RIGHT, angle, null));
+			perpRel.setReason(ProofReasons.OPP_PERPENDICULAR);
+			addFigureRelation(perpRel);
+			return;
+		}
+	}
+
+	private boolean proveRightAngleWithoutPerpendicular(Angle angle) {
+		FigureRelation rightRel = diagram.getFirstRelationOfType(RIGHT);
+		if (rightRel == null || !prove(CONGRUENT, angle, rightRel.getFigure0()))
+			return false;
+		return prove(RIGHT, angle, null);
+	}
+
+	/**
+	 * Try to prove that the given segments are parallel, by proving that they are
+	 * perpendicular to the same segment.
+	 */
+	private void proveParallelSegments(Segment s0, Segment s1) {
+		for (Segment[] segs : new Segment[][] { { s0, s1 }, { s1, s0 } }) {
+			for (FigureRelation rel : new ArrayList<>(
+					diagram.getFigureRelations(PERPENDICULAR, segs[0]))) {
+				Figure other = getOtherFigure(rel, segs[0]);
+				if (other.equals(segs[1]) || !prove(PERPENDICULAR, segs[1], other))
+					continue;
+				if (diagram.getFigureRelation(PARALLEL, s0, s1) == null) {
+					FigureRelation newRel = new FigureRelation(PARALLEL, s0, s1);
+					newRel.addParents(Arrays.asList(rel,
+							diagram.getFigureRelation(PERPENDICULAR, segs[1], other)));
+					newRel.setReason(ProofReasons.PERPENDICULAR_TRANSITIVE);
+					addFigureRelation(newRel);
+				}
+				return;
+			}
+		}
+	}
+
+	/*
+	 * UTILITIES
+	 */
+
+	/**
+	 * Get the triangles that have the given figure as a side or as an angle.
+	 */
+	private List<Triangle> getTrianglesContaining(Figure part) {
+		List<Triangle> list = trianglesByPart.get(part);
+		return list == null ? Collections.emptyList() : list;
+	}
+
+	private boolean containsPart(Triangle tri, Figure part) {
+		return getTrianglesContaining(part).contains(tri);
+	}
+
+	/**
+	 * Get the possible correspondences between the vertices of the two given triangles.
+	 * Each correspondence is a permutation of the name of the second triangle (the i'th
+	 * char corresponds to the i'th vertex of the first triangle). The correspondence that
+	 * best matches the shapes of the triangles comes first.
+	 */
+	private List<String> getCorrespondences(Triangle t0, Triangle t1) {
+		final String name1 = t1.getName();
+		List<String> corrs = new ArrayList<>(6);
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				if (j == i)
+					continue;
+				final int k = 3 - i - j;
+				corrs.add(new String(new char[] {
+						name1.charAt(i), name1.charAt(j), name1.charAt(k) }));
+			}
+		}
+		// Compare the measures of the corresponding angles
+		final TriangleParts parts0 = triangleParts.get(t0);
+		final TriangleParts parts1 = triangleParts.get(t1);
+		Map<String, Float> differences = new HashMap<>();
+		for (String corr : corrs) {
+			float diff = 0f;
+			for (int i = 0; i < 3; i++) {
+				diff += Math.abs(parts0.measures[i] 
+						- parts1.measures[name1.indexOf(corr.charAt(i))]);
+			}
+			differences.put(corr, diff);
+		}
+		corrs.sort((a, b) -> Float.compare(differences.get(a), differences.get(b)));
+		return corrs;
+	}
+
+	/**
+	 * Get whether the given parts of the two triangles correspond in the given
+	 * correspondence.
+	 */
+	private boolean correspond(Triangle t0, Triangle t1, String corr, Figure f0, Figure f1) {
+		final String name0 = t0.getName();
+		for (int i = 0; i < 3; i++) {
+			Figure part0 = f0 instanceof Angle ? getAngle(t0, name0.charAt(i))
+					: getOppositeSide(t0, name0.charAt(i));
+			if (!f0.equals(part0))
+				continue;
+			Figure part1 = f1 instanceof Angle ? getAngle(t1, corr.charAt(i))
+					: getOppositeSide(t1, corr.charAt(i));
+			return f1.equals(part1);
+		}
+		return false;
+	}
+
+	/**
+	 * Get the angle of the given triangle at the given vertex (its primary synonym).
+	 */
+	private Angle getAngle(Triangle tri, char vertex) {
+		return triangleParts.get(tri).angles[tri.getName().indexOf(vertex)];
+	}
+
+	/**
+	 * Get the side of the given triangle opposite to the given vertex.
+	 */
+	private Segment getOppositeSide(Triangle tri, char vertex) {
+		return triangleParts.get(tri).sides[tri.getName().indexOf(vertex)];
+	}
+
+	/**
+	 * Get the largest compound segments that contain the sides of the given angle.
+	 */
+	private Segment[] getLines(Angle angle) {
+		Segment[] lines = angleLines.get(angle);
+		if (lines == null) {
+			Segment[] sides = angle.getSides();
+			lines = new Segment[] {
+					diagram.getLargestCompoundSegmentOf(sides[0].getName()),
+					diagram.getLargestCompoundSegmentOf(sides[1].getName())
+			};
+			angleLines.put(angle, lines);
+		}
+		return lines;
+	}
+
+	private static Figure getOtherFigure(FigureRelation rel, Figure fig) {
+		return rel.getFigure0().equals(fig) ? rel.getFigure1() : rel.getFigure0();
+	}
+
+	/**
+	 * The parts of a triangle, by the index of the vertex in the triangle's name: the
+	 * angle at the vertex (its primary synonym), the side opposite to it, and the
+	 * measure of the angle.
+	 */
+	private class TriangleParts {
+		private Angle[] angles = new Angle[3];
+		private Segment[] sides = new Segment[3];
+		private float[] measures = new float[3];
+
+		public TriangleParts(Triangle tri) {
+			final String name = tri.getName();
+			for (int i = 0; i < 3; i++) {
+				final String angleName = ProofUtils.getFullNameOfAngle(name, 
+						String.valueOf(name.charAt(i)));
+				angles[i] = diagram.getPrimaryAngleSynonym(angleName);
+				measures[i] = tri.getAngle(angleName).getAngle();
+				StringBuilder side = new StringBuilder(name);
+				side.deleteCharAt(i);
+				sides[i] = tri.getSide(side.toString());
+			}
+		}
+	}
+}
@@ -1,12 +1,12 @@
 package geometry.proofs;
 
+import geometry.Vec2;
 import geometry.shapes.Angle;
 import geometry.shapes.Segment;
+import geometry.shapes.Segment.Slope;
 import geometry.shapes.Triangle;
 import geometry.shapes.Vertex;
 
-import util.Node;
-
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -14,7 +14,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 import static geometry.proofs.FigureRelationType.CONGRUENT;
 import static geometry.proofs.FigureRelationType.RIGHT;
@@ -35,7 +38,31 @@ public class Diagram {
 	private List<DiagramListener> listeners;
 	
 	private List<Figure> figures;
-	private List<FigureRelation> relations;
+	/**
+	 * The figures indexed by the sorted letters of their names (see
+	 * {@link Diagram#getNameKey(String)}). Figures of different types can share letters
+	 * (such as a triangle and its angles), so each list holds the figures with the same
+	 * letters, in the same order as in the list of figures.
+	 */
+	private Map<String, List<Figure>> figuresByName;
+	/**
+	 * The figures partitioned by their concrete type, in the same order as in the list of
+	 * figures (see {@link Diagram#getFiguresOfType(Class)}).
+	 */
+	private Map<Class<?>, TypePartition> figuresByType;
+	/**
+	 * The IDs of the figures (every figure that was added, including hidden figures and
+	 * secondary angle synonyms, and every figure of a relation)
+	 */
+	private FigureIds figureIds;
+	private FigureRelationStore relations;
+	/**
+	 * The classes of figures related by each equivalence relation type (see
+	 * {@link FigureRelationType#isEquivalenceFigureRelationType(FigureRelationType)}).
+	 * Only the relations that join two classes are stored in the list of relations, the
+	 * rest are implied by the classes.
+	 */
+	private Map<FigureRelationType, EquivalenceClasses> equivalenceClasses;
 	private FigureRelation proofGoal;
 	
 	/**
@@ -47,6 +74,13 @@ public class Diagram {
 	 * and is called the "primary angle synonym".
 	 */
 	private List<List<Angle>> angleSynonyms;
+	/**
+	 * The lists of angle synonyms, indexed by their canonical form (the center and rays that
+	 * all of the synonyms share, see {@link AngleRays}) and by the canonical name of each of
+	 * their angles (see {@link Angle#getCanonicalName()}).
+	 */
+	private Map<AngleRays, List<Angle>> angleSynonymsByRays;
+	private Map<String, List<Angle>> angleSynonymsByName;
 	
 	/**
 	 * Map of all hidden figures sorted by type.
@@ -54,17 +88,36 @@ public class Diagram {
 	private Map<Class<?>, List<Figure>> hiddenFigures;
 	
 	/**
-	 * Map of all compound segments and their respective component vertices
+	 * All compound segments, indexed by the sorted letters of their names. Each compound
+	 * segment lies on a {@link Line}: a maximal set of collinear component vertices, in
+	 * the order they lie on the line. The component vertices of a compound segment are the
+	 * vertices of its line that lie between its end-points.
+	 */
+	private Map<String, CompoundSegment> compoundSegments;
+	/**
+	 * The lines that each component vertex lies on, indexed by the vertex's name
 	 */
-	public List<Node<Segment, Vertex>> compoundSegments;
+	private Map<Character, List<Line>> linesByVertex;
+	private int lineCount;
 	
 	public Diagram(Policy policy) {
 		this.policy = Objects.requireNonNull(policy);
 		
 		figures = new ArrayList<>();
-		relations = new ArrayList<>();
+		figuresByName = new HashMap<>();
+		figuresByType = new HashMap<>();
+		figureIds = new FigureIds();
+		relations = new FigureRelationStore(figureIds);
+		equivalenceClasses = new EnumMap<>(FigureRelationType.class);
+		for (FigureRelationType type : FigureRelationType.values()) {
+			if (FigureRelationType.isEquivalenceFigureRelationType(type))
+				equivalenceClasses.put(type, new EquivalenceClasses(type, figureIds));
+		}
 		angleSynonyms = new ArrayList<>();
-		compoundSegments = new ArrayList<>();
+		angleSynonymsByRays = new HashMap<>();
+		angleSynonymsByName = new HashMap<>();
+		compoundSegments = new HashMap<>();
+		linesByVertex = new HashMap<>();
 		listeners = new ArrayList<>();
 		hiddenFigures = new HashMap<>();
 		hiddenFigures.put(Vertex.class, new ArrayList<>());
@@ -147,7 +200,10 @@ public class Diagram {
 	
 	@SuppressWarnings("unchecked")
 	public <T extends Figure> T getFigure(String name) {
-		for (Figure fig : figures) {
+		List<Figure> figs = figuresByName.get(getNameKey(name));
+		if (figs == null)
+			return null;
+		for (Figure fig : figs) {
 			if (fig.isValidName(name))
 				return (T)fig;
 		}
@@ -156,7 +212,10 @@ public class Diagram {
 	
 	@SuppressWarnings("unchecked")
 	public <T extends Figure> T getFigure(String name, Class<T> type) {
-		for (Figure fig : figures) {
+		List<Figure> figs = figuresByName.get(getNameKey(name));
+		if (figs == null)
+			return null;
+		for (Figure fig : figs) {
 			if (type == fig.getClass() && fig.isValidName(name)) {
 				return (T)fig;
 			}
@@ -164,6 +223,78 @@ public class Diagram {
 		return null;
 	}
 	
+	/**
+	 * Get the key that figures with the given name are indexed by: the chars of the name,
+	 * sorted. Every name that is valid for a figure has the same chars as the figure's
+	 * name (see {@link Figure#isValidName(String)}), so it has the same key.
+	 */
+	private static String getNameKey(String name) {
+		char[] chars = name.toCharArray();
+		Arrays.sort(chars);
+		return new String(chars);
+	}
+	
+	/**
+	 * Add the given {@link Figure} to the end of the list of figures, and index it by name.
+	 */
+	private void addToFigures(Figure fig) {
+		figures.add(fig);
+		List<Figure> figs = figuresByName.get(getNameKey(fig.getName()));
+		if (figs == null) {
+			figs = new ArrayList<>(2);
+			figuresByName.put(getNameKey(fig.getName()), figs);
+		}
+		figs.add(fig);
+		TypePartition partition = figuresByType.get(fig.getClass());
+		if (partition == null) {
+			partition = new TypePartition();
+			figuresByType.put(fig.getClass(), partition);
+		}
+		partition.add(fig);
+	}
+	
+	/**
+	 * Find the first stored figure that the given {@link Figure} is equal to.
+	 * @return the stored figure, or null if there is none
+	 */
+	private Figure findFigure(Figure fig) {
+		List<Figure> figs = figuresByName.get(getNameKey(fig.getName()));
+		if (figs == null)
+			return null;
+		for (Figure stored : figs) {
+			if (fig.equals(stored))
+				return stored;
+		}
+		return null;
+	}
+	
+	/**
+	 * Remove the given stored {@link Figure} (by identity) from the list of figures, and
+	 * from the index.
+	 * @return false if the figure is not stored
+	 */
+	private boolean removeStoredFigure(Figure stored) {
+		final String key = getNameKey(stored.getName());
+		List<Figure> figs = figuresByName.get(key);
+		if (figs == null || !removeByIdentity(figs, stored))
+			return false;
+		if (figs.isEmpty())
+			figuresByName.remove(key);
+		removeByIdentity(figures, stored);
+		figuresByType.get(stored.getClass()).remove(stored);
+		return true;
+	}
+	
+	private static boolean removeByIdentity(List<Figure> figs, Figure fig) {
+		for (int i = figs.size() - 1; i >= 0; i--) {
+			if (figs.get(i) == fig) {
+				figs.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Add a (non-hidden) {@link Figure} to this {@link Diagram}. This will also add
 	 * all of the given children's children (and their children, and so on). Lastly, it will
@@ -182,6 +313,7 @@ public class Diagram {
 		// No duplicates
 		if (containsFigure(fig))
 			return false;
+		figureIds.register(fig);
 		// If it's an angle, handle angle synonyms
 		if (fig.getClass() == Angle.class) {
 			// Add the angle to the list of angle synonyms
@@ -194,7 +326,7 @@ public class Diagram {
 			}
 		}
 		// Add the figure
-		figures.add(fig);
+		addToFigures(fig);
 		
 		if (policy == Policy.FIGURES_AND_RELATIONS) {
 			// Apply the reflexive postulate
@@ -228,15 +360,21 @@ public class Diagram {
 	}
 	
 	public boolean removeFigure(Figure fig) {
-		return figures.remove(fig);
+		Figure stored = findFigure(fig);
+		return stored != null && removeStoredFigure(stored);
 	}
 	
 	public boolean removeFigures(Collection<? extends Figure> figs) {
-		return figures.removeAll(figs);
+		boolean result = false;
+		for (Figure stored : new ArrayList<>(figures)) {
+			if (figs.contains(stored) && removeStoredFigure(stored))
+				result = true;
+		}
+		return result;
 	}
 	
 	public boolean containsFigure(Figure fig) {
-		return figures.contains(fig);
+		return findFigure(fig) != null;
 	}
 	
 	public boolean containsFigure(String name) {
@@ -275,14 +413,46 @@ public class Diagram {
 		return Collections.unmodifiableList(figures);
 	}
 	
+	/**
+	 * Get the ID of the given {@link Figure} (see {@link FigureIds}). Every figure that was
+	 * added to this {@link Diagram} (including hidden figures and secondary angle synonyms)
+	 * has an ID, and so does every figure of a {@link FigureRelation}.
+	 * @param fig the figure
+	 * @return the ID, or {@link FigureIds#NO_ID} if the figure has no ID
+	 */
+	public int getFigureId(Figure fig) {
+		return figureIds.getId(fig);
+	}
+	
+	/**
+	 * Get the {@link Figure} with the given ID.
+	 * @throws IndexOutOfBoundsException if no figure has the ID
+	 */
+	public Figure getFigureById(int id) {
+		return figureIds.getFigure(id);
+	}
+	
+	/**
+	 * Get the number of figures with IDs (every ID is lower than this number).
+	 */
+	public int getFigureIdCount() {
+		return figureIds.size();
+	}
+	
+	/**
+	 * Get the figures whose class is exactly the given type, in the order they were added.
+	 * <p>
+	 * NOTE: the returned list is a read-only snapshot--it does not change when figures are
+	 * added to or removed from this {@link Diagram} later on, so it can be iterated while
+	 * the diagram is being modified.
+	 * @param type the type of figures to retrieve
+	 * @return an unmodifiable list of the figures
+	 */
+	// Will crash if types don't match up
 	@SuppressWarnings("unchecked")
 	public <T extends Figure> List<T> getFiguresOfType(Class<T> type) {
-		List<T> figs = new ArrayList<>();
-		for (Figure fig : figures) {
-			if (fig.getClass() == type)
-				figs.add((T) fig);
-		}
-		return figs;
+		TypePartition partition = figuresByType.get(type);
+		return partition == null ? Collections.emptyList() : (List<T>) partition.getView();
 	}
 	
 	/*
@@ -290,14 +460,8 @@ public class Diagram {
 	 */
 	
 	public List<Angle> getAngleSynonyms(String angle) {
-		for (List<Angle> subList : angleSynonyms) {
-			for (Angle a : subList) {
-				if (a.isValidName(angle)) {
-					return Collections.unmodifiableList(subList);
-				}
-			}
-		}
-		return null;
+		List<Angle> subList = getAngleSynonymsOf(angle);
+		return subList == null ? null : Collections.unmodifiableList(subList);
 	}
 	
 	public List<Angle> getAllAnglesAndSynonyms() {
@@ -309,31 +473,17 @@ public class Diagram {
 	}
 	
 	public boolean containsAngleSynonym(String angle) {
-//		List<Angle> subList = getAngleSynonyms(angle);
-//		return subList != null;
-		return isPrimaryAngleSynonym(angle) || isSecondaryAngleSynonym(angle);
+		return getAngleSynonymsOf(angle) != null;
 	}
 	
 	public boolean isPrimaryAngleSynonym(String a) {
-		for (List<Angle> subList : angleSynonyms) {
-			if (subList.get(0).isValidName(a)) {
-				return true;
-			}
-		}
-		return false;
+		List<Angle> subList = getAngleSynonymsOf(a);
+		return subList != null && subList.get(0).isValidName(a);
 	}
 	
 	public boolean isSecondaryAngleSynonym(String a) {
-		for (List<Angle> subList : angleSynonyms) {
-			if (subList.size() > 1) {
-				for (int i = 1; i < subList.size(); i++) {
-					if (subList.get(i).isValidName(a)) {
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		List<Angle> subList = getAngleSynonymsOf(a);
+		return subList != null && !subList.get(0).isValidName(a);
 	}
 	
 	/**
@@ -344,49 +494,55 @@ public class Diagram {
 	 * in this diagram.
 	 */
 	public Angle getPrimaryAngleSynonym(String angle) {
-		List<Angle> synSet = getAngleSynonyms(angle);
+		List<Angle> synSet = getAngleSynonymsOf(angle);
 		return synSet == null ? null : synSet.get(0);
 	}
 	
 	/**
-	 * Adds the given {@link Angle} to the list of angle synonyms. 
+	 * Get the (modifiable) list of synonyms of the angle with the given name.
+	 * @return the list, or null if the angle is not contained in this diagram
+	 */
+	private List<Angle> getAngleSynonymsOf(String angle) {
+		if (!Angle.isValidAngleName(angle))
+			return null;
+		return angleSynonymsByName.get(Angle.getCanonicalName(angle));
+	}
+	
+	/**
+	 * Adds the given {@link Angle} to the list of angle synonyms. The angle's synonyms are
+	 * the angles with the same canonical form (see {@link AngleRays}).
 	 * @param angle the angle
 	 * @return true if the angle was added, false if it is already contained in the list
 	 */
 	private boolean addAngle(Angle angle) {
-		// For each list of angle synonyms
-		for (List<Angle> subList : angleSynonyms) {
-			// If it contains the given angle, we're not going to add it (no duplicates)
-			if (subList.contains(angle)) {
-				return false;
-			}
-			// Otherwise, check if it is a synonym of the other angles in this sublist, and if it
-			// is the smallest, move it to the front (it will become the new primary angle synonym)
-			final int result = ProofUtils.compareAngleSynonyms(angle, subList.get(0));
-			// The angle IS a synonym (as opposed to -3, -2, which mean that it is NOT a synonym)
-			if (result > -2) {				
-				// If the angle is SMALLER than the existing smallest angle 
-				// (for this set of synonyms), then insert the angle to the front of the set.
-				// It will become the new primary angle synonym
-				// ALSO, remove the old primary angle synonym from the list of figures, as
-				// now it is a secondary angle synonym, and SASs are not included in the list
-				// of figures
-				if (result == -1) {
-					figures.remove(subList.get(0));
-					subList.add(0, angle);
-				} 
-				// Otherwise, if result = 0 or 1, just append it to the end
-				else {
-					subList.add(angle);
-				}
-				return true;
-			}
-		}
-
+		// No duplicates
+		if (angleSynonymsByName.containsKey(angle.getCanonicalName()))
+			return false;
+		AngleRays rays = AngleRays.of(angle);
+		List<Angle> subList = rays == null ? null : angleSynonymsByRays.get(rays);
 		// If this angle does NOT have any angle synonyms, make an new list for it
-		List<Angle> newSubList = new ArrayList<>();
-		newSubList.add(angle);
-		angleSynonyms.add(newSubList);
+		if (subList == null) {
+			subList = new ArrayList<>();
+			subList.add(angle);
+			angleSynonyms.add(subList);
+			// An angle without a direction is never a synonym of another angle
+			if (rays != null)
+				angleSynonymsByRays.put(rays, subList);
+		}
+		// If the angle is SMALLER than the existing smallest angle (for this set of
+		// synonyms), then insert the angle to the front of the set. It will become the new
+		// primary angle synonym. ALSO, remove the old primary angle synonym from the list
+		// of figures, as now it is a secondary angle synonym, and SASs are not included in
+		// the list of figures
+		else if (AngleRays.isWithin(angle, subList.get(0))) {
+			removeStoredFigure(subList.get(0));
+			subList.add(0, angle);
+		}
+		// Otherwise, just append it to the end
+		else {
+			subList.add(angle);
+		}
+		angleSynonymsByName.put(angle.getCanonicalName(), subList);
 		return true;
 	}
 	
@@ -401,13 +557,16 @@ public class Diagram {
 	 * @return false if the given segment is already a compound segment, true otherwise
 	 */
 	public boolean markAsCompoundSegment(Segment seg) {
-		if (getCompoundSegmentNode(seg.getName()) == null) {
-			Node<Segment, Vertex> newNode = new Node<Segment, Vertex>(seg);
-			// End points are automatically added
-			newNode.getChildren().addAll(seg.getVerticesList());
-			return compoundSegments.add(newNode);
-		}
-		return false;
+		final String key = getNameKey(seg.getName());
+		if (compoundSegments.containsKey(key))
+			return false;
+		// End points are automatically added
+		Vertex[] ends = seg.getVertices();
+		Line line = getLineThrough(ends[0], ends[1], seg.getSlope());
+		CompoundSegment compSeg = new CompoundSegment(seg, line, compoundSegments.size());
+		compoundSegments.put(key, compSeg);
+		line.segments.add(compSeg);
+		return true;
 	}
 	
 	/**
@@ -419,32 +578,42 @@ public class Diagram {
 	 * the given component vertex is already contained
 	 */
 	public boolean addComponentVertex(String seg, Vertex vertex) {
-		// Get the corresponding node
-		Node<Segment, Vertex> node = getCompoundSegmentNode(seg);
-		if (node == null)
+		// Get the corresponding compound segment
+		CompoundSegment compSeg = compoundSegments.get(getNameKey(seg));
+		if (compSeg == null)
+			return false;
+		
+		// The vertex may already lie on the line (if it was added to a collinear compound
+		// segment), but the segments connecting it to the component vertices of this
+		// compound segment are only created once it is added to this one
+		if (!compSeg.addedVertices.add(vertex.getNameChar()))
 			return false;
+		// If the vertex lies on another compound segment that is collinear with this one,
+		// the two are on the same line
+		for (Line other : new ArrayList<>(getLinesOf(vertex.getNameChar()))) {
+			if (other != compSeg.line && !other.merged && other.slope.equals(compSeg.line.slope))
+				mergeLines(compSeg.line, other);
+		}
 		
 		// Add the vertex in order
-		if (ProofUtils.addLeastToGreatestDist(vertex, node.getChildren()) >= 0) {
-			// Create the segments connecting every other existing component vertex to
-			// this new component vertex
-			for (Vertex compV : getComponentVertices(seg)) {
-				// Don't make a segment between this vertex and itself
-				if (compV.isValidName(vertex.getName()))
-					continue;
-				// New segment
-				Segment newSeg = new Segment(compV, vertex);
-				
-				// In the case where two segments intersect and the poi
-				// is one of the segment's end points, this can cause a bug
-				// where one of the segments is the poi listed twice
-				if (!newSeg.getVertexLoc(0).equals(newSeg.getVertexLoc(1))) {
-					addHiddenFigure(newSeg);
-				}
+		addToLine(compSeg.line, vertex);
+		// Create the segments connecting every other existing component vertex to
+		// this new component vertex
+		for (Vertex compV : getComponentVertices(seg)) {
+			// Don't make a segment between this vertex and itself
+			if (compV.isValidName(vertex.getName()))
+				continue;
+			// New segment
+			Segment newSeg = new Segment(compV, vertex);
+			
+			// In the case where two segments intersect and the poi
+			// is one of the segment's end points, this can cause a bug
+			// where one of the segments is the poi listed twice
+			if (!newSeg.getVertexLoc(0).equals(newSeg.getVertexLoc(1))) {
+				addHiddenFigure(newSeg);
 			}
-			return true; // Vertex was successfully added
 		}
-		return false;
+		return true; // Vertex was successfully added
 	}
 	
 	/**
@@ -465,14 +634,23 @@ public class Diagram {
 	
 	/**
 	 * Get a list of all the {@link Vertex}es lying on the given
-	 * compound segment (including the compound segment's end-points).
+	 * compound segment (including the compound segment's end-points), in order from its
+	 * first end-point to its second.
 	 * @return the vertices, or null if the given segment was not designated as a compound segment
 	 */
 	public List<Vertex> getComponentVertices(String seg) {
-		Node<Segment, Vertex> node = getCompoundSegmentNode(seg);
-		if (node == null)
+		CompoundSegment compSeg = compoundSegments.get(getNameKey(seg));
+		if (compSeg == null)
 			return null;
-		return breakToUnitComponentVertices(node, new ArrayList<>());
+		Line line = compSeg.line;
+		final int start = line.indexOf(compSeg.getVertexName(0));
+		final int end = line.indexOf(compSeg.getVertexName(1));
+		List<Vertex> vertices = new ArrayList<>(Math.abs(end - start) + 1);
+		final int step = start <= end ? 1 : -1;
+		for (int i = start; i != end + step; i += step) {
+			vertices.add(line.vertices.get(i));
+		}
+		return vertices;
 	}
 		
 	/**
@@ -498,24 +676,31 @@ public class Diagram {
 		// Stats of the largest segment
 		Segment largestSeg = null;
 		int mostComponentVerts = 0;
-		// For each compound segment
-		for (Node<Segment, Vertex> node : compoundSegments) {
-			// Check that this compound segment contains both endpoints of the query segment
-			int count = 0;
-			List<Vertex> componentVertices = getComponentVertices(node.getObject().getName());
-			for (Vertex v : componentVertices) {
-				if (v.getNameChar() == seg.charAt(0) || v.getNameChar() == seg.charAt(1)) {
-					++count;
+		// The line that both endpoints of the query segment lie on (if any)
+		Line line = null;
+		for (Line candidate : getLinesOf(seg.charAt(0))) {
+			if (candidate.contains(seg.charAt(1)))
+				line = candidate;
+		}
+		if (line != null) {
+			final int index0 = line.indexOf(seg.charAt(0));
+			final int index1 = line.indexOf(seg.charAt(1));
+			// For each compound segment on the line
+			for (CompoundSegment compSeg : line.segments) {
+				final int start = line.indexOf(compSeg.getVertexName(0));
+				final int end = line.indexOf(compSeg.getVertexName(1));
+				final int min = Math.min(start, end);
+				final int max = Math.max(start, end);
+				// Size of the candidate compound segment
+				final int candidate = max - min + 1;
+				// If the candidate compound segment contains the query AND is larger
+				// than the previous largest compound segment, replace it
+				if (index0 >= min && index0 <= max && index1 >= min && index1 <= max
+						&& candidate > mostComponentVerts) {
+					largestSeg = compSeg.segment;
+					mostComponentVerts = candidate;
 				}
 			}
-			// Size of the candidate compound segment
-			final int candidate = componentVertices.size();
-			// If the candidate compound segment contains the query AND is larger
-			// than the previous largest compound segment, replace it
-			if (count == 2 && candidate > mostComponentVerts) {
-				largestSeg = node.getObject();
-				mostComponentVerts = candidate;
-			}
 		}
 		
 		// If largestSeg = null, then it is likely the largest existing compound segment.
@@ -529,47 +714,186 @@ public class Diagram {
 	public boolean isCompoundSegment(String seg) {
 		if (!Segment.isValidSegmentName(seg))
 			throw new IllegalArgumentException(seg + " is not a segment");
-		return getCompoundSegmentNode(seg) != null;
+		return compoundSegments.containsKey(getNameKey(seg));
 	}
 	
 	/**
-	 * Get the corresponding {@link Node} entry for the given {@link Segment}
-	 * @return the entry, or null if there is no entry for the given segment
+	 * Get whether the vertices with the given names lie on the same line of compound
+	 * segments (collinear vertices are made components of compound segments by the
+	 * {@link Preprocessor}, so this is the same as whether the vertices are collinear).
 	 */
-	protected Node<Segment, Vertex> getCompoundSegmentNode(String seg) {
-		for (Node<Segment, Vertex> node : compoundSegments) {
-			if (node.getObject().isValidName(seg))
-				return node;
+	public boolean areCollinear(char v0, char v1, char v2) {
+		for (Line line : getLinesOf(v0)) {
+			if (line.contains(v1) && line.contains(v2))
+				return true;
 		}
-		return null;
+		return false;
+	}
+	
+	private List<Line> getLinesOf(char vertex) {
+		List<Line> lines = linesByVertex.get(vertex);
+		return lines == null ? Collections.emptyList() : lines;
 	}
 	
 	/**
-	 * Return ALL the component vertices of the given segment, not just the "top-level" ones.
-	 * (The children vertices stored in the compound segment nodes are only the most direct
-	 * children of the segment, and we want THEIR children, and grandchildren, and so on).
+	 * Get the line that the segment between the given vertices lies on. If the vertices
+	 * lie on existing collinear lines, those lines are merged. Otherwise, a new line is
+	 * created.
 	 */
-	private List<Vertex> breakToUnitComponentVertices(Node<Segment, Vertex> node, 
-			List<Vertex> all) {
-		if (node != null) {
-			// Add all children
-			for (Vertex v : node.getChildren()) {
-				ProofUtils.addLeastToGreatestDist(v, all);
+	private Line getLineThrough(Vertex v0, Vertex v1, Slope slope) {
+		Line line = null;
+		for (Vertex v : new Vertex[] { v0, v1 }) {
+			// A line that shares a vertex with the segment and has the same slope is the
+			// line that the segment lies on
+			for (Line candidate : new ArrayList<>(getLinesOf(v.getNameChar()))) {
+				if (candidate == line || candidate.merged || !candidate.slope.equals(slope))
+					continue;
+				if (line == null)
+					line = candidate;
+				else
+					line = mergeLines(line, candidate);
 			}
-			// Do the same for each component segment
-			for (int i = 0; i < node.getChildren().size() - 1; i++) {
-				Vertex first = node.getChildren().get(i);
-				Vertex second = node.getChildren().get(i + 1);
-				// Don't call this method on the originally given segment, StackOverflowException
-				if (!node.getObject().isValidName(first.getName() + second.getName())) {
-					Segment segment = new Segment(first, second);
-					breakToUnitComponentVertices(getCompoundSegmentNode(segment.getName()), all);
-				}
+		}
+		if (line == null)
+			line = new Line(lineCount++, v0.getCenter(), v1.getCenter(), slope);
+		addToLine(line, v0);
+		addToLine(line, v1);
+		return line;
+	}
+	
+	private void addToLine(Line line, Vertex vertex) {
+		if (line.add(vertex)) {
+			List<Line> lines = linesByVertex.get(vertex.getNameChar());
+			if (lines == null) {
+				lines = new ArrayList<>(2);
+				linesByVertex.put(vertex.getNameChar(), lines);
 			}
+			lines.add(line);
+		}
+	}
+	
+	/**
+	 * Merge the two given collinear lines into the one with the lower ID.
+	 * @return the merged line
+	 */
+	private Line mergeLines(Line line0, Line line1) {
+		Line into = line0.id < line1.id ? line0 : line1;
+		Line from = into == line0 ? line1 : line0;
+		for (Vertex vertex : from.vertices) {
+			getLinesOf(vertex.getNameChar()).remove(from);
+			addToLine(into, vertex);
+		}
+		for (CompoundSegment compSeg : from.segments) {
+			compSeg.line = into;
+		}
+		into.segments.addAll(from.segments);
+		// Keep the compound segments in the order they were marked
+		into.segments.sort((a, b) -> Integer.compare(a.order, b.order));
+		from.merged = true;
+		return into;
+	}
+	
+	/**
+	 * A segment that was designated as a compound segment, and the line it lies on.
+	 */
+	private static final class CompoundSegment {
+		private final Segment segment;
+		private Line line;
+		// The order in which the compound segments were marked
+		private final int order;
+		// The names of the vertices that were added to this compound segment (including
+		// its end-points)
+		private final Set<Character> addedVertices = new HashSet<>(4);
+		
+		public CompoundSegment(Segment segment, Line line, int order) {
+			this.segment = segment;
+			this.line = line;
+			this.order = order;
+			addedVertices.add(getVertexName(0));
+			addedVertices.add(getVertexName(1));
+		}
+		
+		public char getVertexName(int index) {
+			return segment.getName().charAt(index);
 		}
-		return all;
 	}
+	
+	/**
+	 * A maximal set of collinear component vertices, sorted by their position along the
+	 * line (their distance from the line's origin, in the direction of the line), along
+	 * with the compound segments that lie on the line.
+	 */
+	private static final class Line {
+		private final int id;
+		private final Vec2 origin;
+		private final Vec2 direction;
+		private final Slope slope;
+		private final List<Vertex> vertices = new ArrayList<>();
+		// The position of each vertex along the line
+		private float[] positions = new float[4];
+		// The index of each vertex, by name (updated lazily, see Line#indexOf(char))
+		private final Map<Character, Integer> indices = new HashMap<>();
+		private boolean indicesAreValid = true;
+		private final List<CompoundSegment> segments = new ArrayList<>(2);
+		// Whether this line was merged into another one (and is no longer used)
+		private boolean merged;
+		
+		public Line(int id, Vec2 origin, Vec2 through, Slope slope) {
+			this.id = id;
+			this.origin = new Vec2(origin);
+			this.direction = Vec2.sub(through, origin).normalized();
+			this.slope = slope;
+		}
 		
+		public boolean contains(char vertex) {
+			return indices.containsKey(vertex);
+		}
+		
+		/**
+		 * Get the index of the vertex with the given name.
+		 * @return the index, or -1 if the vertex does not lie on this line
+		 */
+		public int indexOf(char vertex) {
+			if (!indicesAreValid) {
+				for (int i = 0; i < vertices.size(); i++) {
+					indices.put(vertices.get(i).getNameChar(), i);
+				}
+				indicesAreValid = true;
+			}
+			Integer index = indices.get(vertex);
+			return index == null ? -1 : index;
+		}
+		
+		/**
+		 * Insert the given vertex in order.
+		 * @return false if the vertex already lies on this line
+		 */
+		public boolean add(Vertex vertex) {
+			if (contains(vertex.getNameChar()))
+				return false;
+			final float position = Vec2.dot(Vec2.sub(vertex.getCenter(), origin), direction);
+			// Binary search for the first vertex after the new one
+			int low = 0;
+			int high = vertices.size();
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (positions[mid] <= position)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			if (vertices.size() == positions.length)
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			System.arraycopy(positions, low, positions, low + 1, vertices.size() - low);
+			positions[low] = position;
+			vertices.add(low, vertex);
+			// The indices of the vertices after the new one changed
+			indicesAreValid = indicesAreValid && low == vertices.size() - 1;
+			indices.put(vertex.getNameChar(), low);
+			return true;
+		}
+	}
+	
 	/*
 	 * FIGURE RELATIONS
 	 */	
@@ -587,8 +911,10 @@ public class Diagram {
 	}
 	
 	/**
-	 * Apply the transitive postulate to {@link FigureRelation}s of type CONGRUENT, SIMILAR,
-	 * or PARALLEL. Do not try with others, success is not guaranteed.
+	 * Apply the transitive postulate to {@link FigureRelation}s of type SUPPLEMENTARY,
+	 * COMPLEMENTARY or PERPENDICULAR (relations of type CONGRUENT, SIMILAR or PARALLEL are
+	 * transitive through their {@link EquivalenceClasses}). Do not try with others, 
+	 * success is not guaranteed.
 	 * @param rel the {@link FigureRelation} to which the transitive postulate will be applied
 	 * @param queryType the type of relationship ({@link FigureRelationType}) that another
 	 * {@link FigureRelation} must have in order for the transitive postulate to be applied
@@ -604,18 +930,23 @@ public class Diagram {
 		if (rel.isCongruentAndReflexive())
 			return;
 		
-		final int COUNT = relations.size();
+		// Only relations of the query type that contain one of the figures of rel can be
+		// combined with it. Copy them before adding anything, so that relations created
+		// here are not combined with rel as well
+		List<Figure> sharedFriends = rel.getFigures();
+		List<List<FigureRelation>> candidates = new ArrayList<>(sharedFriends.size());
+		for (Figure sharedFriend : sharedFriends) {
+			candidates.add(new ArrayList<>(
+					relations.getFigureRelations(queryType, sharedFriend)));
+		}
 		
-		for (Figure sharedFriend : rel.getFigures()) {
-			for (int i = 0; i < COUNT; i++) {
-				FigureRelation iter = relations.get(i);
-				
+		for (int f = 0; f < sharedFriends.size(); f++) {
+			Figure sharedFriend = sharedFriends.get(f);
+			for (FigureRelation iter : candidates.get(f)) {
 				// EXIT CONDITIONS
 				if (
-						// Figure relation type is not the same as rel (param)
-						iter.getRelationType() != queryType
 						// Figures in iter must be same type as sharedFriend
-						|| iter.getFigure0().getClass() != sharedFriend.getClass()
+						iter.getFigure0().getClass() != sharedFriend.getClass()
 						// Figures in iter must NOT be the same figure congruent to itself
 						|| iter.isCongruentAndReflexive()
 						// Iter must not be equal to rel
@@ -640,13 +971,33 @@ public class Diagram {
 				newRel.setReason(reasonForNewRel);
 				newRel.addParent(iter);
 				newRel.addParent(rel);
-				// Add the new relation
-				if (!containsFigureRelation(newRel))
-					relations.add(newRel);
+				addDerivedFigureRelation(newRel);
 			}
 		}
 	}
 	
+	/**
+	 * Add the given {@link FigureRelation}, which was derived by the transitive postulate,
+	 * without applying any further postulates to it.
+	 * @return false if the relation is already known, true otherwise
+	 */
+	private boolean addDerivedFigureRelation(FigureRelation rel) {
+		if (containsFigureRelation(rel))
+			return false;
+		relations.add(rel);
+		EquivalenceClasses classes = equivalenceClasses.get(rel.getRelationType());
+		if (classes != null)
+			classes.union(rel);
+		notifyFigureRelationWasAdded(rel);
+		return true;
+	}
+	
+	private void notifyFigureRelationWasAdded(FigureRelation rel) {
+		for (DiagramListener listener : listeners) {
+			listener.figureRelationWasAdded(rel);
+		}
+	}
+	
 	/**
 	 * Make the given angle congruent to all
 	 * other right angles in the list of {@link FigureRelation}s.<p>
@@ -657,44 +1008,37 @@ public class Diagram {
 	private void makeRightAngle(FigureRelation rightAngleRel) {
 		// Get the angle
 		Angle angle = rightAngleRel.getFigure0();
-		// Make new right angle congruent to all other right angles in collection
-		for (int i = 0; i < relations.size() - 1; i++) {
-			// (Above): we say "i < relations.size() '-1' " bc we don't want to compare
-			// the relation pair to itself. Therefore, we must exclude it from the list.
-			// Since we just added it to the list, we know that it is at the very end
-			// of the list. The "-1" excludes the relation pair and makes sure that
-			// we don't compare it to itself.
-			
-			FigureRelation pair = relations.get(i);
-			if (pair.getRelationType() == RIGHT) {
-				FigureRelation newPair = new FigureRelation(
-						CONGRUENT, angle, pair.getFigure0());
-				newPair.addParent(rightAngleRel);
-				newPair.addParent(pair);
-				newPair.setReason(ProofReasons.RIGHT_ANGLES_CONGRUENT);
-
-				// Ensure that we're not adding a duplicate
-				if (!containsFigureRelation(newPair)) {
-					relations.add(newPair);
-				}
-			}
-			/*
-			 * Add transitive right angles (angles that are congruent to this right angle
-			 * are also right angles themselves
-			 */
-			else if (pair.getRelationType() == CONGRUENT) {
-				// Get the pair of angles (this right angle and another congruent angle)
-				List<Figure> figs = pair.getFigures();
-				final int indexOfAngle = figs.indexOf(angle);
-				if (indexOfAngle >= 0) {
-					// Make the other angle a right angle
-					Angle otherAngle = (Angle) figs.get(indexOfAngle == 0 ? 1 : 0);
-					FigureRelation rightRel = new FigureRelation(RIGHT, otherAngle, null);
-					rightRel.addParents(Arrays.asList(pair, rightAngleRel));
-					rightRel.setReason(ProofReasons.TRANSITIVE);
-					addFigureRelation(rightRel);
-				}
-			}
+		// Make new right angle congruent to all other right angles in collection.
+		// All right angles are in the same congruence class, so it is enough to make it
+		// congruent to the first one
+		for (FigureRelation pair : relations.getFigureRelations(RIGHT)) {
+			// Don't compare the relation pair to itself
+			if (pair == rightAngleRel)
+				continue;
+			FigureRelation newPair = new FigureRelation(
+					CONGRUENT, angle, pair.getFigure0());
+			newPair.addParent(rightAngleRel);
+			newPair.addParent(pair);
+			newPair.setReason(ProofReasons.RIGHT_ANGLES_CONGRUENT);
+			addDerivedFigureRelation(newPair);
+			break;
+		}
+		/*
+		 * Add transitive right angles (angles that are congruent to this right angle
+		 * are also right angles themselves
+		 */
+		List<Figure> congruentAngles = new ArrayList<>(getEquivalentFigures(CONGRUENT, angle));
+		for (Figure otherAngle : congruentAngles) {
+			// Skip the angle itself, and angles that are already right angles
+			if (otherAngle.equals(angle) || getFigureRelation(RIGHT, otherAngle, null) != null)
+				continue;
+			// Get the pair of angles (this right angle and another congruent angle)
+			FigureRelation pair = getFigureRelation(CONGRUENT, angle, otherAngle);
+			// Make the other angle a right angle
+			FigureRelation rightRel = new FigureRelation(RIGHT, otherAngle, null);
+			rightRel.addParents(Arrays.asList(pair, rightAngleRel));
+			rightRel.setReason(ProofReasons.TRANSITIVE);
+			addFigureRelation(rightRel);
 		}
 	}
 	
@@ -748,25 +1092,19 @@ public class Diagram {
 		
 		// For each figure in the given FigureRelation, find another FigureRelation that contains
 		// that figure (whose FigureRelationType is the suppOrComp param)
-		final int count = relations.size();
 		FigureRelation friend0 = null, friend1 = null;
-		for (int i = 0; i < count; i++) {
-			FigureRelation currRel = relations.get(i);
-			FigureRelationType currRelType = currRel.getRelationType();
-			// Correct type
-			if (currRelType != suppOrComp)
-				continue;
-			// Must contain the first figure of the given FigureRelation
-			else if (currRel.containsFigure(rel.getFigure0())) {
-				friend0 = currRel;
-			}
-			// Must contain the second figure of the given FigureRelation
-			else if (currRel.containsFigure(rel.getFigure1())) {
+		// Must contain the first figure of the given FigureRelation
+		List<FigureRelation> candidates0 = relations.getFigureRelations(suppOrComp, 
+				rel.getFigure0());
+		if (!candidates0.isEmpty())
+			friend0 = candidates0.get(0);
+		// Must contain the second figure of the given FigureRelation (but not the first)
+		for (FigureRelation currRel : relations.getFigureRelations(suppOrComp, 
+				rel.getFigure1())) {
+			if (!currRel.containsFigure(rel.getFigure0())) {
 				friend1 = currRel;
-			}
-			// Once we've found both friends, we need look no more
-			if (friend0 != null && friend1 != null)
 				break;
+			}
 		}
 		// Make the two new friends congruent
 		if (friend0 != null && friend1 != null) {
@@ -844,6 +1182,13 @@ public class Diagram {
 		FigureRelationType relType = pair.getRelationType();
 		
 		if (relations.add(pair)) {
+			// Apply the transitive postulate (join the classes of the pair's figures)
+			EquivalenceClasses classes = equivalenceClasses.get(relType);
+			if (classes != null && !pair.isCongruentAndReflexive())
+				classes.union(pair);
+			// Notify listeners that a figure relation was added
+			notifyFigureRelationWasAdded(pair);
+			
 			switch (relType) {
 			// If the relation declares that an angle is a right angle,
 			// make this right angle congruent to all other right angles.
@@ -855,8 +1200,6 @@ public class Diagram {
 				if (pair.isCongruentAndReflexive())
 					break;
 				
-				// Apply the transitive postulate
-				applyTransitivePostulate(pair, relType, relType, ProofReasons.TRANSITIVE);
 				// If the relation is not congruent and reflexive
 				if (relType == CONGRUENT) {
 					// If this FigureRelation involves two angles
@@ -894,13 +1237,15 @@ public class Diagram {
 						ProofReasons.SHARED_COMPLEMENTARY_ANGLE);
 				// Now that we have a new pair of complementary angles, check to see
 				// if they are complementary to a pair of congruent angles, which would make
-				// them congruent
-				final int count = relations.size();
-				for (int i = 0; i < count; i++) {
-					FigureRelation rel = relations.get(i);
-					if (rel.getRelationType() == CONGRUENT && !rel.isCongruentAndReflexive()
-						&& rel.getFigure0() instanceof Angle) {
-						addTransitiveSuppCompAngles(rel, COMPLEMENTARY);
+				// them congruent. Only congruent angles involving one of the new pair's
+				// angles can be affected
+				for (Figure fig : pair.getFigures()) {
+					List<Figure> congFigs = new ArrayList<>(getEquivalentFigures(CONGRUENT, fig));
+					for (Figure congFig : congFigs) {
+						if (!congFig.equals(fig)) {
+							addTransitiveSuppCompAngles(getFigureRelation(CONGRUENT, fig, congFig), 
+									COMPLEMENTARY);
+						}
 					}
 				}
 				break;
@@ -915,13 +1260,67 @@ public class Diagram {
 		return false; // Didn't add FigureRelation
 	}
 	
+	/**
+	 * Get the {@link FigureRelation} of the given type between the given figures.
+	 * If the type is an equivalence relation type and the figures are related through
+	 * other figures, a new {@link FigureRelation} is returned whose parents are the 
+	 * relations that connect them (see {@link EquivalenceClasses#explain(Figure, Figure)}).
+	 * @param type the type of the relation
+	 * @param f0 the first figure
+	 * @param f1 the second figure (null for single figure relations)
+	 * @return the relation, or null if the figures are not related
+	 */
 	public FigureRelation getFigureRelation(FigureRelationType type, Figure f0, Figure f1) {
-		FigureRelation query = new FigureRelation(type, f0, f1);
-		for (FigureRelation rel : relations) {
-			if (FigureRelation.safeEquals(rel, query))
-				return rel;
+		FigureRelation rel = relations.get(type, f0, f1);
+		if (rel != null || f1 == null || f0.equals(f1))
+			return rel;
+		EquivalenceClasses classes = equivalenceClasses.get(type);
+		if (classes == null)
+			return null;
+		List<FigureRelation> path = classes.explain(f0, f1);
+		if (path == null)
+			return null;
+		rel = new FigureRelation(type, f0, f1);
+		rel.addParents(path);
+		rel.setReason(ProofReasons.TRANSITIVE);
+		return rel;
+	}
+	
+	/**
+	 * Get all of the <i>stored</i> {@link FigureRelation}s of the given type that involve
+	 * the given {@link Figure}. For equivalence relation types, this does not include
+	 * the relations that are implied by transitivity
+	 * (see {@link Diagram#getEquivalentFigures(FigureRelationType, Figure)}).
+	 * @return an unmodifiable list of the relations, in the order they were added
+	 */
+	public List<FigureRelation> getFigureRelations(FigureRelationType type, Figure fig) {
+		return relations.getFigureRelations(type, fig);
+	}
+	
+	/**
+	 * Get all of the <i>stored</i> {@link FigureRelation}s of the given type that involve
+	 * the {@link Figure} with the given ID (see 
+	 * {@link Diagram#getFigureRelations(FigureRelationType, Figure)}).
+	 * @return an unmodifiable list of the relations, in the order they were added
+	 */
+	public List<FigureRelation> getFigureRelations(FigureRelationType type, int id) {
+		return relations.getFigureRelations(type, id);
+	}
+	
+	/**
+	 * Get all of the figures that are related to the given {@link Figure} by the given
+	 * equivalence relation type (including the figure itself).
+	 * @param type the type of the relation (CONGRUENT, SIMILAR or PARALLEL)
+	 * @param fig the figure
+	 * @return an unmodifiable list of the figures
+	 */
+	public List<Figure> getEquivalentFigures(FigureRelationType type, Figure fig) {
+		EquivalenceClasses classes = equivalenceClasses.get(type);
+		if (classes == null) {
+			throw new IllegalArgumentException("FigureRelationType must be an equivalence "
+					+ "relation type");
 		}
-		return null;
+		return classes.getMembers(fig);
 	}
 	
 	public void addFigureRelations(Collection<FigureRelation> figs) {
@@ -941,15 +1340,62 @@ public class Diagram {
 //		return relations.remove(valueOf(type, fig0, fig1, parent));
 //	}
 	public boolean removeFigureRelation(FigureRelation pair) {
-		return relations.remove(pair);
+		if (!relations.remove(pair))
+			return false;
+		rebuildEquivalenceClasses(pair.getRelationType());
+		return true;
 	}
 	
 	public boolean removeFigureRelation(Collection<FigureRelation> figs) {
-		return relations.removeAll(figs);
+		boolean result = false;
+		for (FigureRelation fig : figs) {
+			if (removeFigureRelation(fig))
+				result = true;
+		}
+		return result;
+	}
+	
+	/**
+	 * Classes cannot be split, so after removing a relation of an equivalence relation
+	 * type, the classes of that type are rebuilt from the remaining relations.
+	 */
+	private void rebuildEquivalenceClasses(FigureRelationType type) {
+		EquivalenceClasses classes = equivalenceClasses.get(type);
+		if (classes == null)
+			return;
+		classes.clear();
+		for (FigureRelation rel : relations.getFigureRelations(type)) {
+			if (!rel.isCongruentAndReflexive())
+				classes.union(rel);
+		}
+	}
+	
+	/**
+	 * Replace the given {@link FigureRelation} with another (for example, a more detailed
+	 * version of the same relation). The new relation takes the place of the old one.
+	 * @param oldRel the relation to be replaced
+	 * @param newRel the new relation
+	 * @return false if the old relation is not contained in this {@link Diagram}
+	 */
+	public boolean replaceFigureRelation(FigureRelation oldRel, FigureRelation newRel) {
+		if (!relations.replace(oldRel, newRel))
+			return false;
+		rebuildEquivalenceClasses(oldRel.getRelationType());
+		if (newRel.getRelationType() != oldRel.getRelationType())
+			rebuildEquivalenceClasses(newRel.getRelationType());
+		return true;
 	}
 	
+	/**
+	 * Get whether the given {@link FigureRelation} is contained in this {@link Diagram},
+	 * either explicitly or, for equivalence relation types, by transitivity.
+	 */
 	public boolean containsFigureRelation(FigureRelation rel) {
-		return relations.contains(rel);
+		if (relations.contains(rel))
+			return true;
+		EquivalenceClasses classes = equivalenceClasses.get(rel.getRelationType());
+		return classes != null && !rel.getFigure0().equals(rel.getFigure1())
+				&& classes.areEquivalent(rel.getFigure0(), rel.getFigure1());
 	}
 	
 //	public boolean containsFigureRelation(FigureRelationType type, String fig0,
@@ -958,31 +1404,67 @@ public class Diagram {
 //	}
 	
 	public boolean containsFigureRelations(Collection<FigureRelation> figs) {
-		return relations.containsAll(figs);
+		for (FigureRelation fig : figs) {
+			if (!containsFigureRelation(fig))
+				return false;
+		}
+		return true;
 	}
 	
 	public FigureRelation getFirstRelationOfType(FigureRelationType type) {
-		for (FigureRelation pair : relations) {
-			if (pair.getRelationType() == type) {
-				return pair;
-			}
-		}
-		return null;
+		List<FigureRelation> rels = relations.getFigureRelations(type);
+		return rels.isEmpty() ? null : rels.get(0);
 	}
 	
 	public List<FigureRelation> getAllFigureRelationsOfType(FigureRelationType type) {
-		List<FigureRelation> rels = null;
-		for (FigureRelation pair : relations) {
-			if (pair.getRelationType() == type) {
-				if (rels == null)
-					rels = new ArrayList<>();
-				rels.add(pair);
-			}
-		}
-		return rels == null ? Collections.emptyList() : rels;
+		return relations.getFigureRelations(type);
 	}
 	
+	/**
+	 * Get all of the {@link FigureRelation}s in this {@link Diagram}.
+	 * @return an unmodifiable list of the relations, in the order they were added
+	 * @see Diagram#replaceFigureRelation(FigureRelation, FigureRelation)
+	 */
 	public List<FigureRelation> getFigureRelations() {
-		return relations;
+		return relations.getFigureRelations();
+	}
+	
+	/**
+	 * The figures of a single type. Snapshots of the figures are handed out as read-only
+	 * views, and the figures are only copied when they are modified after a view was
+	 * handed out (copy-on-write), so that the views never change and reading them does
+	 * not allocate a new list every time.
+	 */
+	private static final class TypePartition {
+		private List<Figure> figures = new ArrayList<>();
+		// The read-only view of the figures, or null if none was handed out since the
+		// last modification
+		private List<Figure> view;
+		
+		public List<Figure> getView() {
+			if (view == null)
+				view = Collections.unmodifiableList(figures);
+			return view;
+		}
+		
+		public void add(Figure fig) {
+			detachView();
+			figures.add(fig);
+		}
+		
+		public void remove(Figure fig) {
+			detachView();
+			removeByIdentity(figures, fig);
+		}
+		
+		/**
+		 * Make sure that the handed out view (if any) is not affected by a modification.
+		 */
+		private void detachView() {
+			if (view != null) {
+				figures = new ArrayList<>(figures);
+				view = null;
+			}
+		}
 	}
 }
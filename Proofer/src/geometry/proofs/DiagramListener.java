@@ -4,4 +4,13 @@ public interface DiagramListener {
 
 	public void figureWasAdded(Figure fig);
 	
+	/**
+	 * Called when a {@link FigureRelation} is added to the {@link Diagram}, including
+	 * relations derived by the {@link Diagram} itself (the transitive postulate, etc.).
+	 * By the time this is called, relations implied by the new one through transitivity
+	 * are already known to the {@link Diagram}.
+	 */
+	default public void figureRelationWasAdded(FigureRelation rel) {
+	}
+	
 }
@@ -0,0 +1,227 @@
+package geometry.proofs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The equivalence classes of {@link Figure}s under a transitive relation (such as
+ * congruence), kept in a union-find structure. Instead of storing a {@link FigureRelation}
+ * for every pair of figures in a class, only the relations that joined two classes are
+ * stored, so checking whether two figures are related takes near constant time, and the
+ * memory used grows with the number of figures rather than with the number of pairs.
+ * <p>
+ * Alongside the union-find structure, a proof forest is kept: each relation that joined
+ * two classes is an edge between its two figures. The path between two figures of the same
+ * class is the chain of relations that makes them related
+ * (see {@link EquivalenceClasses#explain(Figure, Figure)}).
+ * <p>
+ * The nodes of the figures are indexed by the figures' IDs (see {@link FigureIds}).
+ * <p>
+ * Reading the classes never modifies them, so they can be read from several threads at
+ * once, as long as no classes are joined at the same time.
+ */
+public class EquivalenceClasses {
+
+	private FigureRelationType type;
+	private FigureIds ids;
+	/** Nodes of the figures, indexed by ID (null for figures that are in no relation) */
+	private List<Node> nodes;
+
+	/**
+	 * @param type the type of the relation
+	 * @param ids the IDs of the figures. Figures are given IDs when they are first
+	 * related to another figure, if they have none.
+	 */
+	public EquivalenceClasses(FigureRelationType type, FigureIds ids) {
+		this.type = type;
+		this.ids = ids;
+		nodes = new ArrayList<>();
+	}
+
+	public FigureRelationType getRelationType() {
+		return type;
+	}
+
+	/**
+	 * Join the classes of the two figures of the given {@link FigureRelation}.
+	 * @param rel the relation
+	 * @return false if the figures were already in the same class, true otherwise
+	 */
+	public boolean union(FigureRelation rel) {
+		if (rel.getRelationType() != type) {
+			throw new IllegalArgumentException("FigureRelation must be of type " + type);
+		}
+		Node a = getNode(rel.getFigure0(), true);
+		Node b = getNode(rel.getFigure1(), true);
+		Node rootA = find(a);
+		Node rootB = find(b);
+		if (rootA == rootB)
+			return false;
+
+		// Add the edge to the proof forest. The tree of the smaller class is rerooted at
+		// its figure, which then hangs from the other figure
+		if (rootA.members.size() > rootB.members.size()) {
+			Node temp = a;
+			a = b;
+			b = temp;
+		}
+		reroot(a);
+		a.proofParent = b;
+		a.proofEdge = rel;
+
+		// Union by rank
+		if (rootA.rank < rootB.rank) {
+			Node temp = rootA;
+			rootA = rootB;
+			rootB = temp;
+		}
+		rootB.parent = rootA;
+		if (rootA.rank == rootB.rank)
+			++rootA.rank;
+		// The members of the smaller class are moved to the larger one
+		if (rootA.members.size() < rootB.members.size()) {
+			List<Figure> temp = rootA.members;
+			rootA.members = rootB.members;
+			rootB.members = temp;
+		}
+		rootA.members.addAll(rootB.members);
+		rootB.members = null;
+		return true;
+	}
+
+	/**
+	 * Get whether the two given figures are in the same class.
+	 */
+	public boolean areEquivalent(Figure f0, Figure f1) {
+		Node a = getNode(f0, false);
+		Node b = getNode(f1, false);
+		if (a == null || b == null)
+			return f0.equals(f1);
+		return find(a) == find(b);
+	}
+
+	/**
+	 * Get all of the figures in the class of the given figure (including the figure).
+	 * @return an unmodifiable view of the figures
+	 */
+	public List<Figure> getMembers(Figure fig) {
+		Node node = getNode(fig, false);
+		if (node == null)
+			return Collections.singletonList(fig);
+		return Collections.unmodifiableList(find(node).members);
+	}
+
+	/**
+	 * Get the {@link FigureRelation}s that make the two given figures related, in order:
+	 * the first relation contains the first figure, each relation shares a figure with
+	 * the next one, and the last one contains the second figure.
+	 * @return the relations (empty if the figures are equal), or null if the figures
+	 * are not in the same class
+	 */
+	public List<FigureRelation> explain(Figure f0, Figure f1) {
+		if (!areEquivalent(f0, f1))
+			return null;
+		Node a = getNode(f0, false);
+		Node b = getNode(f1, false);
+		if (a == null || a == b)
+			return Collections.emptyList();
+
+		// Find the closest common ancestor of the two nodes in the proof forest
+		Set<Node> ancestorsOfA = new HashSet<>();
+		for (Node n = a; n != null; n = n.proofParent) {
+			ancestorsOfA.add(n);
+		}
+		List<FigureRelation> fromB = new ArrayList<>();
+		Node common = b;
+		while (!ancestorsOfA.contains(common)) {
+			fromB.add(common.proofEdge);
+			common = common.proofParent;
+		}
+
+		List<FigureRelation> path = new ArrayList<>(fromB.size() + 2);
+		for (Node n = a; n != common; n = n.proofParent) {
+			path.add(n.proofEdge);
+		}
+		for (int i = fromB.size() - 1; i >= 0; i--) {
+			path.add(fromB.get(i));
+		}
+		return path;
+	}
+
+	/**
+	 * Remove all of the classes.
+	 */
+	public void clear() {
+		nodes.clear();
+	}
+
+	private Node getNode(Figure fig, boolean create) {
+		final int id = create ? ids.register(fig) : ids.getId(fig);
+		if (id == FigureIds.NO_ID || (id >= nodes.size() && !create))
+			return null;
+		while (nodes.size() <= id)
+			nodes.add(null);
+		Node node = nodes.get(id);
+		if (node == null && create) {
+			node = new Node(fig);
+			nodes.set(id, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Find the root of the given node's class. The path to the root is not compressed,
+	 * so that reads don't modify the classes (union by rank keeps the paths short).
+	 */
+	private static Node find(Node node) {
+		Node root = node;
+		while (root.parent != root)
+			root = root.parent;
+		return root;
+	}
+
+	/**
+	 * Make the given node the root of its tree in the proof forest, by reversing the
+	 * edges between it and the current root.
+	 */
+	private static void reroot(Node node) {
+		Node prev = null;
+		FigureRelation prevEdge = null;
+		while (node != null) {
+			Node next = node.proofParent;
+			FigureRelation edge = node.proofEdge;
+			node.proofParent = prev;
+			node.proofEdge = prevEdge;
+			prev = node;
+			prevEdge = edge;
+			node = next;
+		}
+	}
+
+	private static final class Node {
+		private Figure figure;
+		/** Parent in the union-find forest (a root is its own parent) */
+		private Node parent;
+		private int rank;
+		/** The figures of this node's class (only kept by roots) */
+		private List<Figure> members;
+		/** Parent in the proof forest, and the relation that connects them */
+		private Node proofParent;
+		private FigureRelation proofEdge;
+
+		public Node(Figure figure) {
+			this.figure = figure;
+			parent = this;
+			members = new ArrayList<>(1);
+			members.add(figure);
+		}
+
+		@Override
+		public String toString() {
+			return figure.toString();
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package geometry.proofs;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -27,6 +28,19 @@ public interface Figure {
 		return Utils.containsAllChars(getName(), name);
 	}
 	
+	/**
+	 * Get the canonical name of this {@link Figure}: a name that is identical for all
+	 * figures that are equal to this one, regardless of the order of the chars in their
+	 * names. By default, this is the name with its chars in sorted order.
+	 * NOTE: like {@link Figure#isValidName(String)}, this assumes that a name does
+	 * not contain the same char twice.
+	 */
+	default public String getCanonicalName() {
+		char[] chars = getName().toCharArray();
+		Arrays.sort(chars);
+		return new String(chars);
+	}
+	
 	public List<Figure> getChildren();
 	public Figure getChild(String name);
 	
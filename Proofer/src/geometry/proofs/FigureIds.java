@@ -0,0 +1,110 @@
+package geometry.proofs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gives each {@link Figure} of a {@link Diagram} a dense int ID: the first figure gets 0,
+ * the next one 1, and so on. Equal figures get the same ID. IDs are never reused, so
+ * they can be used as indices into arrays and lists that are indexed by figure, instead
+ * of maps keyed by figures or by their names.
+ * <p>
+ * Looking up the ID of a figure hashes the figure once. Everything else (the relations
+ * of a figure, its equivalence class, etc.) can then be found by its ID. The figures are
+ * hashed into a table with open addressing, next to their IDs, so that no IDs are boxed.
+ */
+public class FigureIds {
+	
+	/** Returned by {@link FigureIds#getId(Figure)} for figures that have no ID */
+	public static final int NO_ID = -1;
+
+	/** The initial size of the hash table (a power of 2) */
+	private static final int INITIAL_CAPACITY = 64;
+
+	// The hash table: the figure of each slot (null for empty slots), and its ID
+	private Figure[] keys;
+	private int[] values;
+	private List<Figure> figures;
+	
+	public FigureIds() {
+		keys = new Figure[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		figures = new ArrayList<>();
+	}
+	
+	/**
+	 * Get the ID of the given {@link Figure}, giving it a new ID if it has none.
+	 * @param fig the figure
+	 * @return the ID
+	 */
+	public int register(Figure fig) {
+		final int slot = findSlot(fig);
+		if (keys[slot] != null)
+			return values[slot];
+		final int newId = figures.size();
+		keys[slot] = fig;
+		values[slot] = newId;
+		figures.add(fig);
+		// Keep the table at most half full
+		if (figures.size() * 2 > keys.length)
+			grow();
+		return newId;
+	}
+	
+	/**
+	 * Get the ID of the given {@link Figure}.
+	 * @param fig the figure (or null)
+	 * @return the ID, or {@link FigureIds#NO_ID} if the figure is null or has no ID
+	 */
+	public int getId(Figure fig) {
+		if (fig == null)
+			return NO_ID;
+		final int slot = findSlot(fig);
+		return keys[slot] == null ? NO_ID : values[slot];
+	}
+	
+	/**
+	 * Get the {@link Figure} with the given ID (the first figure that was given the ID).
+	 * @throws IndexOutOfBoundsException if there is no such ID
+	 */
+	public Figure getFigure(int id) {
+		return figures.get(id);
+	}
+	
+	/**
+	 * Get the number of IDs that were given (every ID is lower than this number).
+	 */
+	public int size() {
+		return figures.size();
+	}
+	
+	/**
+	 * Get the slot of the given figure in the hash table, or the empty slot where it
+	 * belongs if it is not in the table.
+	 */
+	private int findSlot(Figure fig) {
+		final int mask = keys.length - 1;
+		final int h = fig.hashCode() * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (keys[slot] != null && !keys[slot].equals(fig))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+	
+	/**
+	 * Double the size of the hash table.
+	 */
+	private void grow() {
+		Figure[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new Figure[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				final int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
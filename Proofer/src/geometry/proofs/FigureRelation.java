@@ -140,10 +140,19 @@ public class FigureRelation {
 	
 	@Override
 	public int hashCode() {
-		int result = 17;
-		result = 31 * result + figure0.hashCode();
+		int hash0 = figure0.hashCode();
 		// In a single figure relation, the second figure is null
-		result = 31 * result + (figure1 == null ? 0 : figure1.hashCode());
+		int hash1 = figure1 == null ? 0 : figure1.hashCode();
+		// If the relation type is symmetrical, the order of the figures must not
+		// affect the hash code (see equals())
+		if (FigureRelationType.isSymmetricalFigureRelationType(relType) && hash0 > hash1) {
+			final int temp = hash0;
+			hash0 = hash1;
+			hash1 = temp;
+		}
+		int result = 17;
+		result = 31 * result + hash0;
+		result = 31 * result + hash1;
 		result = 31 * result + relType.hashCode();
 		return result;
 	}
@@ -0,0 +1,418 @@
+package geometry.proofs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the {@link FigureRelation}s of a {@link Diagram}. Relations are kept in the order
+ * in which they were added, and are also indexed by:
+ * <ul>
+ * <li>their {@link FigureRelationType} and each of their individual {@link Figure}s</li>
+ * <li>their {@link FigureRelationType} alone</li>
+ * </ul>
+ * Figures are indexed by their IDs (see {@link FigureIds}): for each type, the relations
+ * of a figure are found at the index of its ID, along with the IDs of the other figures
+ * of the relations. This allows all of the relations of a given type that involve a given
+ * figure to be retrieved without scanning every relation, and a relation to be looked up
+ * by the ID of its other figure among the relations of one of its figures.
+ * <p>
+ * NOTE: two relations with the same type and the same figures are considered to be the same
+ * relation (see {@link FigureRelation#safeEquals(FigureRelation, FigureRelation)}), so
+ * only one of them can be stored.
+ */
+public class FigureRelationStore {
+
+	/** IDs of the figures */
+	private FigureIds ids;
+	/** All relations, in the order they were added */
+	private List<FigureRelation> relations;
+	/** Relations indexed by type, and then by the ID of each of their figures */
+	private Map<FigureRelationType, List<Adjacency>> relationsByFigure;
+	/** Relations indexed by type */
+	private Map<FigureRelationType, List<FigureRelation>> relationsByType;
+
+	/**
+	 * @param ids the IDs of the figures. Figures of added relations are given IDs if they
+	 * have none.
+	 */
+	public FigureRelationStore(FigureIds ids) {
+		this.ids = ids;
+		relations = new ArrayList<>();
+		relationsByFigure = new EnumMap<>(FigureRelationType.class);
+		relationsByType = new EnumMap<>(FigureRelationType.class);
+	}
+
+	/**
+	 * Add the given {@link FigureRelation} to the end of this store.
+	 * @param rel the relation
+	 * @return false if an equivalent relation is already stored, true otherwise
+	 */
+	public boolean add(FigureRelation rel) {
+		if (contains(rel))
+			return false;
+		relations.add(rel);
+		getRelationsOfType(rel.getRelationType(), true).add(rel);
+		addAdjacencies(rel);
+		return true;
+	}
+
+	/**
+	 * Replace the given {@link FigureRelation} with another. The new relation takes the
+	 * place of the old one in the order of relations.
+	 * @param oldRel the relation to be replaced
+	 * @param newRel the new relation
+	 * @return false if the old relation is not stored, true otherwise
+	 */
+	public boolean replace(FigureRelation oldRel, FigureRelation newRel) {
+		final int index = indexOf(relations, oldRel);
+		if (index < 0)
+			return false;
+		relations.set(index, newRel);
+
+		// Update the secondary indices. Where possible, the new relation takes the place
+		// of the old one, so that the order of the indices stays the same
+		final boolean sameType = newRel.getRelationType() == oldRel.getRelationType();
+		replaceOrRemove(getRelationsOfType(oldRel.getRelationType(), false), oldRel,
+				sameType ? newRel : null);
+		if (!sameType)
+			getRelationsOfType(newRel.getRelationType(), true).add(newRel);
+
+		final int[] oldIds = getFigureIds(oldRel, false);
+		final int[] newIds = getFigureIds(newRel, true);
+		if (sameType && Arrays.equals(oldIds, newIds)) {
+			for (int id : getDistinctIds(oldIds)) {
+				getAdjacency(oldRel.getRelationType(), id, false).replace(oldRel, newRel);
+			}
+		} else {
+			removeAdjacencies(oldRel, oldIds);
+			addAdjacencies(newRel);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the given {@link FigureRelation} from this store.
+	 * @param rel the relation
+	 * @return true if the relation was removed
+	 */
+	public boolean remove(FigureRelation rel) {
+		FigureRelation stored = get(rel.getRelationType(), rel.getFigure0(), rel.getFigure1());
+		if (stored == null)
+			return false;
+		relations.remove(indexOf(relations, stored));
+		replaceOrRemove(getRelationsOfType(stored.getRelationType(), false), stored, null);
+		removeAdjacencies(stored, getFigureIds(stored, false));
+		return true;
+	}
+
+	/**
+	 * Get whether a relation equivalent to the given {@link FigureRelation} is stored.
+	 */
+	public boolean contains(FigureRelation rel) {
+		return get(rel.getRelationType(), rel.getFigure0(), rel.getFigure1()) != null;
+	}
+
+	/**
+	 * Get the stored {@link FigureRelation} with the given type and figures.
+	 * @param type the type of the relation
+	 * @param f0 the first figure
+	 * @param f1 the second figure (null for single figure relations)
+	 * @return the relation, or null if there is no such relation
+	 */
+	public FigureRelation get(FigureRelationType type, Figure f0, Figure f1) {
+		final int id0 = ids.getId(f0);
+		final int id1 = ids.getId(f1);
+		if (id0 == FigureIds.NO_ID || (f1 != null && id1 == FigureIds.NO_ID))
+			return null;
+		return get(type, id0, id1);
+	}
+
+	/**
+	 * Get the stored {@link FigureRelation} with the given type and figure IDs.
+	 * @param type the type of the relation
+	 * @param id0 the ID of the first figure
+	 * @param id1 the ID of the second figure ({@link FigureIds#NO_ID} for single figure
+	 * relations)
+	 * @return the relation, or null if there is no such relation
+	 */
+	public FigureRelation get(FigureRelationType type, int id0, int id1) {
+		Adjacency adjacency = getAdjacency(type, id0, false);
+		if (adjacency == null)
+			return null;
+		FigureRelation rel = adjacency.get(encode(id1, true));
+		// The order of the figures does not matter for symmetrical relation types
+		if (rel == null && id1 != id0 && FigureRelationType.isSymmetricalFigureRelationType(type))
+			rel = adjacency.get(encode(id1, false));
+		return rel;
+	}
+
+	/**
+	 * Get all of the {@link FigureRelation}s of the given type, in the order that they
+	 * were added.
+	 * @return an unmodifiable view of the relations
+	 */
+	public List<FigureRelation> getFigureRelations(FigureRelationType type) {
+		List<FigureRelation> list = getRelationsOfType(type, false);
+		return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Get all of the {@link FigureRelation}s of the given type that involve the given
+	 * {@link Figure}, in the order that they were added.
+	 * @return an unmodifiable view of the relations
+	 */
+	public List<FigureRelation> getFigureRelations(FigureRelationType type, Figure fig) {
+		final int id = ids.getId(fig);
+		if (id == FigureIds.NO_ID)
+			return Collections.emptyList();
+		return getFigureRelations(type, id);
+	}
+
+	/**
+	 * Get all of the {@link FigureRelation}s of the given type that involve the
+	 * {@link Figure} with the given ID, in the order that they were added.
+	 * @return an unmodifiable view of the relations
+	 */
+	public List<FigureRelation> getFigureRelations(FigureRelationType type, int id) {
+		Adjacency adjacency = getAdjacency(type, id, false);
+		return adjacency == null ? Collections.emptyList()
+				: Collections.unmodifiableList(adjacency.rels);
+	}
+
+	/**
+	 * Get all of the {@link FigureRelation}s, in the order that they were added.
+	 * @return an unmodifiable view of the relations
+	 */
+	public List<FigureRelation> getFigureRelations() {
+		return Collections.unmodifiableList(relations);
+	}
+
+	public int size() {
+		return relations.size();
+	}
+
+	private List<FigureRelation> getRelationsOfType(FigureRelationType type, boolean create) {
+		List<FigureRelation> list = relationsByType.get(type);
+		if (list == null && create) {
+			list = new ArrayList<>();
+			relationsByType.put(type, list);
+		}
+		return list;
+	}
+
+	private Adjacency getAdjacency(FigureRelationType type, int id, boolean create) {
+		List<Adjacency> list = relationsByFigure.get(type);
+		if (list == null) {
+			if (!create)
+				return null;
+			list = new ArrayList<>();
+			relationsByFigure.put(type, list);
+		}
+		if (id >= list.size()) {
+			if (!create)
+				return null;
+			while (list.size() <= id)
+				list.add(null);
+		}
+		Adjacency adjacency = list.get(id);
+		if (adjacency == null && create) {
+			adjacency = new Adjacency();
+			list.set(id, adjacency);
+		}
+		return adjacency;
+	}
+
+	/**
+	 * Index the given relation by each of its figures.
+	 */
+	private void addAdjacencies(FigureRelation rel) {
+		final int[] figIds = getFigureIds(rel, true);
+		final FigureRelationType type = rel.getRelationType();
+		getAdjacency(type, figIds[0], true).add(encode(figIds[1], true), rel);
+		// A reflexive relation is only indexed once
+		if (figIds[1] != FigureIds.NO_ID && figIds[1] != figIds[0])
+			getAdjacency(type, figIds[1], true).add(encode(figIds[0], false), rel);
+	}
+
+	private void removeAdjacencies(FigureRelation rel, int[] figIds) {
+		for (int id : getDistinctIds(figIds)) {
+			Adjacency adjacency = getAdjacency(rel.getRelationType(), id, false);
+			if (adjacency != null)
+				adjacency.remove(rel);
+		}
+	}
+
+	/**
+	 * Get the IDs of the two figures of the given relation (the second one is
+	 * {@link FigureIds#NO_ID} for single figure relations).
+	 * @param register whether to give IDs to figures that have none
+	 */
+	private int[] getFigureIds(FigureRelation rel, boolean register) {
+		if (register) {
+			return new int[] {
+					ids.register(rel.getFigure0()),
+					rel.getFigure1() == null ? FigureIds.NO_ID : ids.register(rel.getFigure1())
+			};
+		}
+		return new int[] { ids.getId(rel.getFigure0()), ids.getId(rel.getFigure1()) };
+	}
+
+	/**
+	 * Get the distinct, valid IDs of the given pair of IDs.
+	 */
+	private static int[] getDistinctIds(int[] figIds) {
+		if (figIds[1] == FigureIds.NO_ID || figIds[1] == figIds[0])
+			return new int[] { figIds[0] };
+		return figIds;
+	}
+
+	/**
+	 * Encode the ID of the other figure of a relation, and whether the figure that the
+	 * relation is indexed by is the first figure of the relation, in a single int.
+	 */
+	private static int encode(int otherId, boolean first) {
+		return (otherId << 1) | (first ? 0 : 1);
+	}
+
+	/**
+	 * Find the given relation in the given list by identity.
+	 */
+	private static int indexOf(List<FigureRelation> list, FigureRelation rel) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) == rel)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Replace the given relation in the list with the replacement, or remove it
+	 * if the replacement is null.
+	 */
+	private static void replaceOrRemove(List<FigureRelation> list, FigureRelation rel,
+			FigureRelation replacement) {
+		if (list == null)
+			return;
+		final int index = indexOf(list, rel);
+		if (index < 0)
+			return;
+		if (replacement == null)
+			list.remove(index);
+		else
+			list.set(index, replacement);
+	}
+
+	/**
+	 * The relations of a figure (of a single type), in the order they were added, along
+	 * with the encoded IDs of their other figures (see {@link FigureRelationStore#encode}).
+	 * Once a figure has more than {@link Adjacency#HASH_THRESHOLD} relations, the encoded IDs
+	 * are also hashed (with open addressing, so that no ints are boxed), so that looking up
+	 * a relation does not scan every relation of the figure.
+	 */
+	private static final class Adjacency {
+		/** The number of relations up to which a lookup scans the relations */
+		private static final int HASH_THRESHOLD = 8;
+
+		private int[] others = new int[4];
+		private List<FigureRelation> rels = new ArrayList<>(4);
+		// The index + 1 of the relation of each slot (0 for empty slots), or null if the
+		// relations are not hashed yet. The size is a power of 2.
+		private int[] table;
+
+		public void add(int other, FigureRelation rel) {
+			if (rels.size() == others.length)
+				others = Arrays.copyOf(others, others.length * 2);
+			final int index = rels.size();
+			others[index] = other;
+			rels.add(rel);
+			if (table != null && rels.size() * 2 <= table.length)
+				insert(index);
+			else if (rels.size() > HASH_THRESHOLD)
+				rehash();
+		}
+
+		public FigureRelation get(int other) {
+			if (table == null) {
+				for (int i = 0; i < rels.size(); i++) {
+					if (others[i] == other)
+						return rels.get(i);
+				}
+				return null;
+			}
+			final int mask = table.length - 1;
+			for (int slot = hash(other) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+				final int index = table[slot] - 1;
+				if (others[index] == other)
+					return rels.get(index);
+			}
+			return null;
+		}
+
+		public void replace(FigureRelation rel, FigureRelation replacement) {
+			final int index = indexOf(rels, rel);
+			if (index >= 0)
+				rels.set(index, replacement);
+		}
+
+		/**
+		 * Remove the given relation. Its slot is freed by shifting the slots after it back
+		 * (so that no probe sequence is broken), and the indices of the relations after it are
+		 * shifted down, like in the list.
+		 */
+		public void remove(FigureRelation rel) {
+			final int index = indexOf(rels, rel);
+			if (index < 0)
+				return;
+			if (table != null) {
+				final int mask = table.length - 1;
+				int hole = hash(others[index]) & mask;
+				while (table[hole] != index + 1)
+					hole = (hole + 1) & mask;
+				for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+					// Move the relation back unless its own slot is after the hole
+					final int home = hash(others[table[slot] - 1]) & mask;
+					if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+						table[hole] = table[slot];
+						hole = slot;
+					}
+				}
+				table[hole] = 0;
+				for (int slot = 0; slot < table.length; slot++) {
+					if (table[slot] > index + 1)
+						table[slot]--;
+				}
+			}
+			System.arraycopy(others, index + 1, others, index, rels.size() - index - 1);
+			rels.remove(index);
+		}
+
+		/**
+		 * Hash every relation again, into a table with room for twice as many relations.
+		 * Relations are inserted in order, so that a lookup finds the first relation that
+		 * was added, like a scan does.
+		 */
+		private void rehash() {
+			table = new int[Integer.highestOneBit(Math.max(rels.size(), 1) * 4 - 1) << 1];
+			for (int i = 0; i < rels.size(); i++) {
+				insert(i);
+			}
+		}
+
+		private void insert(int index) {
+			final int mask = table.length - 1;
+			int slot = hash(others[index]) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = index + 1;
+		}
+
+		private static int hash(int other) {
+			final int h = other * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -25,6 +25,14 @@ public enum FigureRelationType {
 		return type == RIGHT || type == ISOSCELES;
 	}
 	
+	/**
+	 * Get whether the given {@link FigureRelationType} is an equivalence relation
+	 * (reflexive, symmetrical and transitive), such as CONGRUENT.
+	 */
+	public static boolean isEquivalenceFigureRelationType(FigureRelationType type) {
+		return type == CONGRUENT || type == SIMILAR || type == PARALLEL;
+	}
+	
 	/**
 	 * Get whether the given {@link FigureRelationType} is symmetrical.
 	 */
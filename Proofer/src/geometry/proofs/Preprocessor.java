@@ -1,6 +1,13 @@
 package geometry.proofs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import geometry.Vec2;
 import geometry.shapes.Angle;
@@ -8,15 +15,10 @@ import geometry.shapes.Segment;
 import geometry.shapes.Segment.Slope;
 import geometry.shapes.Triangle;
 import geometry.shapes.Vertex;
+import geometry.shapes.VertexHash;
 
-import javafx.scene.control.Alert;
-import javafx.scene.control.ButtonType;
-import javafx.scene.control.Alert.AlertType;
-
-import ui.FigureRelationListPanel;
-import ui.FigureRelationPanel;
-import ui.canvas.GraphicsShape;
-import ui.canvas.diagram.DiagramCanvas;
+import util.SpatialGrid;
+import util.Utils;
 
 import static geometry.proofs.FigureRelationType.CONGRUENT;
 import static geometry.proofs.FigureRelationType.SUPPLEMENTARY;
@@ -27,18 +29,29 @@ public final class Preprocessor {
 	// No instantiating this class
 	private Preprocessor() {}
 	
+	/** Margin around segments when looking for intersections */
+	private static final float INTERSECTION_TOLERANCE = 0.05f;
+	/** Smallest size of the cells of the grids that segments are hashed into */
+	private static final float MIN_SEGMENT_CELL_SIZE = 1f;
 	/**
-	 * Create a {@link Diagram} and fill it with {@link Figure}s from a 
-	 * {@link DiagramCanvas}
-	 * @param canvas the {@link DiagramCanvas}
+	 * Slopes are rounded to this many decimal places when they are grouped (the same as in
+	 * {@link Slope#equals(Object)})
+	 */
+	private static final int SLOPE_KEY_DECIMAL_PLACES = 4;
+	private static final float SLOPE_KEY_MULTIPLIER = 10000f;
+	
+	/**
+	 * Create a {@link Diagram} and fill it with the given {@link Figure}s, along with
+	 * all of the hidden figures that they form
+	 * @param figures the figures
 	 * @return the newly created {@link Diagram}
 	 */
-	public static Diagram compileFigures(DiagramCanvas canvas, Diagram.Policy policy) {
+	public static Diagram compileFigures(Collection<? extends Figure> figures, 
+			Diagram.Policy policy) {
 		Diagram diagram = new Diagram(policy);
 		
-		// Gather figures
-		for (GraphicsShape<?> shape : canvas.getDiagramFigures()) {
-			diagram.addFigure(shape.getShape());
+		for (Figure fig : figures) {
+			diagram.addFigure(fig);
 		}
 		
 		// Add and include all hidden figures
@@ -48,113 +61,125 @@ public final class Preprocessor {
 	}
 
 	/**
-	 * Prepare a {@link Diagram} to be processed by {@link ProofSolver}.
-	 * @param canvas the {@link DiagramCanvas}
-	 * @param figRelPanel the {@link FigureRelationListPanel}
-	 * @return the {@link Diagram} if successful, or null if not successful
+	 * Prepare a {@link Diagram} of the given {@link Problem} to be processed by
+	 * {@link ProofSolver} (without a user interface). The derived relations of the problem
+	 * (if it was saved after being solved) are restored as well.
+	 * @param problem the problem
+	 * @return the {@link Diagram}
+	 * @throws IllegalArgumentException if a figure of a statement does not exist, or if a
+	 * statement is not legal
+	 * @throws NullPointerException if the problem has no goal
 	 */
-	public static Diagram generateDiagram(DiagramCanvas canvas, 
-			FigureRelationListPanel figRelPanel) {
+	public static Diagram generateDiagram(Problem problem) {
+		if (problem.getGoal() == null)
+			throw new NullPointerException("Problem has no goal: " + problem);
 		
 		// Compile the figures
-		Diagram diagram = compileFigures(canvas, Diagram.Policy.FIGURES_AND_RELATIONS);
+		Diagram diagram = compileFigures(problem.getFigures(), 
+				Diagram.Policy.FIGURES_AND_RELATIONS);
 		
 		// Make vertical angles congruent
 		handleVerticalAngles(diagram);
 		// Make supplementary angles supplementary
 		identifySupplementaryAngles(diagram);
 		
-		// Preprocess given, return null in case of error
-		if (preprocessGiven(diagram, canvas, figRelPanel) < 0)
-			return null;
+		// Add the given
+		for (Problem.Statement given : problem.getGivens()) {
+			FigureRelation rel = createFigureRelation(diagram, given.getType(), 
+					given.getFigure0(), given.getFigure1());
+			rel.setReason(ProofReasons.GIVEN);
+			diagram.addFigureRelation(rel);
+		}
+		// Set the proof objective
+		Problem.Statement goal = problem.getGoal();
+		FigureRelation proofObjective = createFigureRelation(diagram, goal.getType(), 
+				goal.getFigure0(), goal.getFigure1());
+		proofObjective.setReason(ProofReasons.NONE);
+		diagram.setProofGoal(proofObjective);
 		
-		// Preprocess perpendicular pair
-		preprocessPerpendicularPairs(diagram);
-		// Preprocess bisecting pairs
-		preprocessBisectingPairs(diagram);
+		preprocessSpecialRelations(diagram);
+		
+		// Restore the relations that were derived when the problem was solved
+		addFigureRelations(diagram, problem.getRelations());
 		
 		return diagram;
 	}
 	
 	/**
-	 * Incorporates user-inputted information into the given Diagram
-	 * @return -1 in the case of failure, 0 in case of success
+	 * Convert the given perpendicular and bisecting {@link FigureRelation}s to their more
+	 * detailed forms (see {@link Preprocessor#preprocessPerpendicularPairs(Diagram)} and
+	 * {@link Preprocessor#preprocessBisectingPairs(Diagram)}).
 	 */
-	private static int preprocessGiven(Diagram diag, DiagramCanvas canvas,
-			FigureRelationListPanel figRelPanel) {
-		
-		// Get given information
-		for (FigureRelationPanel panel : figRelPanel.getFigureRelationPanels()) {
-			// Ensure content
-			if (!panel.hasContent())
-				continue;
-			
-			FigureRelation rel = parseFigureRelationPanel(panel, diag);
-			if (rel == null)
-				return -1;
-			rel.setReason(ProofReasons.GIVEN);
-			// Add the given
-			diag.addFigureRelation(rel);
-		}
-		
-		// Get proof objective
-		FigureRelationPanel objectivePanel = figRelPanel.getProofGoalPanel();
-		FigureRelation proofObjective = parseFigureRelationPanel(objectivePanel, diag);
-		if (proofObjective == null)
-			return -1;
-		proofObjective.setReason(ProofReasons.NONE);
-		diag.setProofGoal(proofObjective);
-		
-		return 0; // Success
+	private static void preprocessSpecialRelations(Diagram diagram) {
+		// Preprocess perpendicular pair
+		preprocessPerpendicularPairs(diagram);
+		// Preprocess bisecting pairs
+		preprocessBisectingPairs(diagram);
 	}
 	
 	/**
-	 * Ensure that the given {@link FigureRelationPanel} produces a valid {@link FigureRelation}
-	 * @return a {@link FigureRelation} containing the panel's contents, or null if the panel does
-	 * not contain a valid {@link FigureRelation}
+	 * Create a {@link FigureRelation} between the figures of the given {@link Diagram} with
+	 * the given names (see {@link Problem.Statement}).
+	 * @param diag the diagram
+	 * @param relType the type of the relation
+	 * @param figText0 the name of the first figure
+	 * @param figText1 the name of the second figure (ignored for single figure relation types)
+	 * @return the relation
+	 * @throws IllegalArgumentException if a figure does not exist, or if the relation is
+	 * not legal
 	 */
-	private static FigureRelation parseFigureRelationPanel(FigureRelationPanel panel,
-			Diagram diag) {
-		// Get the components of the panel
-		FigureRelationType relType = panel.getRelationType();
-		String figText0 = panel.getFigTextField0().getText();
-		String figText1 = panel.getFigTextField1().getText();
-		
+	public static FigureRelation createFigureRelation(Diagram diag, 
+			FigureRelationType relType, String figText0, String figText1) {
 		// Get the first figure
 		Figure fig0 = searchForFigure(diag, figText0);
-		if (fig0 == null) {
-			showNonexistantFigureDialog(figText0);
-			return null;
-		}
+		if (fig0 == null)
+			throw new IllegalArgumentException("\"" + figText0 + "\" does not exist");
 		// Get second figure
 		Figure fig1 = null;
 		if (!FigureRelationType.isSingleFigureRelationType(relType)) {
-			fig1 = searchForFigure(diag, figText1);
-			if (fig1 == null) {
-				showNonexistantFigureDialog(figText1);
-				return null;
-			}
+			fig1 = figText1 == null ? null : searchForFigure(diag, figText1);
+			if (fig1 == null)
+				throw new IllegalArgumentException("\"" + figText1 + "\" does not exist");
 		}
 		// Make sure the figure relation is legal
 		if (!FigureRelation.isLegalRelation(relType, fig0, fig1)) {
-			String message = fig0.getClass().getSimpleName() + " " + relType + " " + 
-						fig1.getClass().getSimpleName() + " is not a legal " + "statement";
-			Alert alert = new Alert(AlertType.ERROR, message, ButtonType.OK);
-			alert.showAndWait();
-			// Failure
-			return null;
+			throw new IllegalArgumentException(fig0.getClass().getSimpleName() + " " + relType 
+					+ (fig1 == null ? "" : " " + fig1.getClass().getSimpleName())
+					+ " is not a legal statement");
 		}
 
 		return new FigureRelation(relType, fig0, fig1);
 	}
-		
+	
 	/**
-	 * Display dialog showing that the figure was not found
+	 * Add the {@link FigureRelation}s of the given {@link Problem.Derivation}s to the given
+	 * {@link Diagram}, with their reasons and their parents (see
+	 * {@link Problem#getRelations()}). A relation that the diagram already has (for example,
+	 * a given) is not added again: the relations derived from it get the diagram's relation
+	 * as their parent instead.
+	 * @param diag the diagram
+	 * @param relations the derived relations, each after its parents
+	 * @throws IllegalArgumentException if a figure does not exist, or if a relation is not
+	 * legal
 	 */
-	private static void showNonexistantFigureDialog(String name) {
-		Alert alert = new Alert(AlertType.ERROR, "\"" + name + "\" does not exist", 
-					ButtonType.OK);
-		alert.showAndWait();
+	private static void addFigureRelations(Diagram diag, List<Problem.Derivation> relations) {
+		FigureRelation[] rels = new FigureRelation[relations.size()];
+		for (int i = 0; i < rels.length; i++) {
+			Problem.Derivation derivation = relations.get(i);
+			Problem.Statement statement = derivation.getStatement();
+			FigureRelation rel = createFigureRelation(diag, statement.getType(), 
+					statement.getFigure0(), statement.getFigure1());
+			rels[i] = diag.getFigureRelation(rel.getRelationType(), rel.getFigure0(), 
+					rel.getFigure1());
+			if (rels[i] != null)
+				continue;
+			rel.setReason(derivation.getReason());
+			for (int parent : derivation.getParents()) {
+				rel.addParent(rels[parent]);
+			}
+			diag.addFigureRelation(rel);
+			rels[i] = rel;
+		}
 	}
 	
 	private static Figure searchForFigure(Diagram diagram, String name) {
@@ -192,30 +217,72 @@ public final class Preprocessor {
 	private static void addHiddenFigures(Diagram diagram) {
 		// Add hidden vertices
 		addHiddenVerticesAndSegments(diagram);
-
+		
+		// Add hidden segments and angles
+		addHiddenSegmentsAndAngles(diagram);
+		
+		// Make sure segments that fully contain other segments are compounds
+		handleOverlappingSegments(diagram);
+		
+		// Add hidden triangles
+		addHiddenTriangles(diagram);
+	}
+	
+	/**
+	 * Find and add the hidden segments and angles formed by pairs of segments that share
+	 * one vertex: two collinear segments form a hidden (compound) segment, and two
+	 * segments with different slopes form a hidden angle (see
+	 * {@link Preprocessor#addHiddenSegmentOrAngle(Diagram, Segment, Segment)}).
+	 * <p>
+	 * This is repeated in passes until no more hidden figures are found, since hidden
+	 * segments form hidden figures of their own. Only the pairs of segments that end at the
+	 * same vertex are checked, and each pass only checks the pairs that involve a segment
+	 * that was added since the previous pass.
+	 * @param diagram the diagram
+	 */
+	private static void addHiddenSegmentsAndAngles(Diagram diagram) {
+		// The indices of the segments that end at each vertex
+		Map<Character, List<Integer>> graph = new HashMap<>();
+		// The number of segments that were checked in previous passes
+		int checked = 0;
 		boolean figuresWereAdded = false;
 		do {
 			figuresWereAdded = false;
 			
+			// Segments are never removed, so the new segments come after the old ones
 			List<Segment> segs = diagram.getFiguresOfType(Segment.class);
-			for (int i = 0; i < segs.size()-1; i++) {
-				Segment seg0 = segs.get(i);
-				for (int j = i + 1; j < segs.size(); j++) {
-					Segment seg1 = segs.get(j);
-					// Get/add the hidden figure created by the two segments (or null)
-					Figure hiddenFig = addHiddenSegmentOrAngle(diagram, seg0, seg1);
-					// If we've found a new hidden figure
-					if (hiddenFig != null)
-						figuresWereAdded = true;
+			for (int i = checked; i < segs.size(); i++) {
+				for (Vertex vertex : segs.get(i).getVertices()) {
+					List<Integer> incident = graph.get(vertex.getNameChar());
+					if (incident == null) {
+						incident = new ArrayList<>();
+						graph.put(vertex.getNameChar(), incident);
+					}
+					incident.add(i);
 				}
 			}
+			// Pair up each new segment with the segments that share one of its vertices
+			Set<Long> pairs = new HashSet<>();
+			for (int j = checked; j < segs.size(); j++) {
+				for (Vertex vertex : segs.get(j).getVertices()) {
+					for (int i : graph.get(vertex.getNameChar())) {
+						if (i != j)
+							pairs.add(((long) Math.min(i, j) << 32) | Math.max(i, j));
+					}
+				}
+			}
+			checked = segs.size();
+			
+			for (long pair : toSortedArray(pairs)) {
+				Segment seg0 = segs.get((int) (pair >>> 32));
+				Segment seg1 = segs.get((int) pair);
+				// Get/add the hidden figure created by the two segments (or null)
+				Figure hiddenFig = addHiddenSegmentOrAngle(diagram, seg0, seg1);
+				// If we've found a new hidden figure
+				if (hiddenFig != null)
+					figuresWereAdded = true;
+			}
 		} while (figuresWereAdded);
-		
-		// Make sure segments that fully contain other segments are compounds
-		handleOverlappingSegments(diagram);
-		
-		// Add hidden triangles
-		addHiddenTriangles(diagram);
 	}
 	
 	/**
@@ -270,129 +337,329 @@ public final class Preprocessor {
 		return null;
 	}
 	
+	/**
+	 * Sort the given pairs of indices (see
+	 * {@link Preprocessor#getIntersectionCandidates(List)}) in the order that a nested loop
+	 * would visit them. The figures and relations found from the pairs are then added in
+	 * the same order (and with the same names) as if every pair was tested.
+	 */
+	private static long[] toSortedArray(Set<Long> pairs) {
+		long[] sorted = new long[pairs.size()];
+		int index = 0;
+		for (long pair : pairs) {
+			sorted[index++] = pair;
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+	
+	/**
+	 * Get the key of the slope class of the given segment: two segments have the same key
+	 * if their slopes are equal (see {@link Slope#equals(Object)}).
+	 */
+	private static Float getSlopeKey(Segment seg) {
+		final float slope = seg.getSlope().getSlopeRaw();
+		// All vertical slopes are equal
+		return Utils.round(Float.isInfinite(slope) ? Float.POSITIVE_INFINITY : slope,
+				SLOPE_KEY_DECIMAL_PLACES);
+	}
+	
 	/**
 	 * Find and add hidden vertices (vertices created by two intersecting segments,
 	 * not including segment end-points).
+	 * <p>
+	 * Only the pairs of segments that share a cell of a uniform grid are tested (see
+	 * {@link Preprocessor#getIntersectionCandidates(List)}). Vertices are looked up by
+	 * location in a {@link VertexHash}.
 	 * @param diag the diagram
 	 */
 	private static void addHiddenVerticesAndSegments(Diagram diag) {
 		List<Segment> segs = diag.getFiguresOfType(Segment.class);
-		for (int i = 0; i < segs.size() - 1; i++) {
-			Segment seg0 = segs.get(i);
-			for (int j = i + 1; j < segs.size(); j++) {
-				Segment seg1 = segs.get(j);
-				// IF the segments intersect
-				if (Segment.segmentsDoIntersect(seg0, seg1)) {
-					// Get the point of intersection
-					Vec2 poi = Segment.getPointOfIntersection(seg0, seg1);
-					// Create a new vertex at the given intersection
-					Vertex newVertex = null;
-					// Skip if there already is a vertex at the given location
-					if (getVertexAtLoc(diag, poi) == null) {
-						// Create the vertex at the poi
-						newVertex = new Vertex(generateNewVertexName(diag), poi);
-						// Add the vertex (since it didn't exist before)
-						diag.addHiddenFigure(newVertex);
-						
-						// Since there is now a vertex at the poi that is NOT a segment
-						// end point, the two intersecting segments have now become
-						// compound segments.
-						diag.markAsCompoundSegment(seg0);
-						diag.markAsCompoundSegment(seg1);
-						diag.addComponentVertex(seg0.getName(), newVertex);
-						diag.addComponentVertex(seg1.getName(), newVertex);
-					}
-					/*
-					 * Even if there is a vertex at the poi, it is possible that
-					 * the vertex is the endpoint of one/both of the intersecting segments.
-					 * If so, we still want to count it.
-					 * There are two possibilities: either the segments form a T or they form
-					 * an L (not necessarily at right angles). In the former case, we want to 
-					 * make the segment that contains the other segment's endpoint into a 
-					 * compound segment
-					 */
-					else {
-						// See if the vertex is a segment end point
-						newVertex = getSegmentEndpoint(diag, poi);
-						final char vname = newVertex.getNameChar();
-						// If the segments form a T and not an L
-						if (!(seg0.containsVertex(vname) && seg1.containsVertex(vname))) {
-							Segment newCompSeg = seg0.containsVertex(newVertex.getNameChar()) ?
-									seg1 : seg0;
-							diag.markAsCompoundSegment(newCompSeg);
-							diag.addComponentVertex(newCompSeg.getName(), newVertex);							
-						}
+		// The vertices of the diagram, hashed by location
+		VertexHash vertices = new VertexHash(diag.getFiguresOfType(Vertex.class));
+		
+		for (long pair : getIntersectionCandidates(segs)) {
+			Segment seg0 = segs.get((int) (pair >>> 32));
+			Segment seg1 = segs.get((int) pair);
+			// IF the segments intersect
+			if (Segment.segmentsDoIntersect(seg0, seg1)) {
+				// Get the point of intersection
+				Vec2 poi = Segment.getPointOfIntersection(seg0, seg1);
+				// Create a new vertex at the given intersection
+				Vertex newVertex = vertices.get(poi);
+				// Skip if there already is a vertex at the given location
+				if (newVertex == null) {
+					// Create the vertex at the poi
+					newVertex = new Vertex(generateNewVertexName(diag), poi);
+					// Add the vertex (since it didn't exist before)
+					diag.addHiddenFigure(newVertex);
+					vertices.add(newVertex);
+					
+					// Since there is now a vertex at the poi that is NOT a segment
+					// end point, the two intersecting segments have now become
+					// compound segments.
+					diag.markAsCompoundSegment(seg0);
+					diag.markAsCompoundSegment(seg1);
+					diag.addComponentVertex(seg0.getName(), newVertex);
+					diag.addComponentVertex(seg1.getName(), newVertex);
+				}
+				/*
+				 * Even if there is a vertex at the poi, it is possible that
+				 * the vertex is the endpoint of one/both of the intersecting segments.
+				 * If so, we still want to count it.
+				 * There are two possibilities: either the segments form a T or they form
+				 * an L (not necessarily at right angles). In the former case, we want to 
+				 * make the segment that contains the other segment's endpoint into a 
+				 * compound segment
+				 */
+				else {
+					final char vname = newVertex.getNameChar();
+					// If the segments form a T and not an L
+					if (!(seg0.containsVertex(vname) && seg1.containsVertex(vname))) {
+						Segment newCompSeg = seg0.containsVertex(newVertex.getNameChar()) ?
+								seg1 : seg0;
+						diag.markAsCompoundSegment(newCompSeg);
+						diag.addComponentVertex(newCompSeg.getName(), newVertex);							
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Get the pairs of the given segments that may intersect: the pairs whose bounding boxes
+	 * share a cell of a uniform grid. Every pair of segments that intersect is included.
+	 * The cells are about as large as the average segment, so each segment only lies in a
+	 * few cells, and only segments that are close to each other are paired up.
+	 * @param segs the segments
+	 * @return the pairs, each encoded as the index of the first segment in the upper 32 bits
+	 * and the index of the second in the lower 32 bits (see
+	 * {@link Preprocessor#toSortedArray(Set)})
+	 */
+	private static long[] getIntersectionCandidates(List<Segment> segs) {
+		if (segs.size() < 2)
+			return new long[0];
+		// Make the cells as large as the average segment
+		float totalSize = 0f;
+		for (Segment seg : segs) {
+			Vec2 v0 = seg.getVertexLoc(0);
+			Vec2 v1 = seg.getVertexLoc(1);
+			totalSize += Math.max(Math.abs(v0.getX() - v1.getX()), Math.abs(v0.getY() - v1.getY()));
+		}
+		final float cellSize = Math.max(totalSize / segs.size(), MIN_SEGMENT_CELL_SIZE);
+		
+		SpatialGrid<Integer> grid = new SpatialGrid<>(cellSize);
+		for (int i = 0; i < segs.size(); i++) {
+			Vec2 v0 = segs.get(i).getVertexLoc(0);
+			Vec2 v1 = segs.get(i).getVertexLoc(1);
+			// Pad the bounding box, so that points of intersection that are computed
+			// slightly outside of it (rounding errors) still lie in one of its cells
+			grid.add(i,
+					Math.min(v0.getX(), v1.getX()) - INTERSECTION_TOLERANCE,
+					Math.min(v0.getY(), v1.getY()) - INTERSECTION_TOLERANCE,
+					Math.max(v0.getX(), v1.getX()) + INTERSECTION_TOLERANCE,
+					Math.max(v0.getY(), v1.getY()) + INTERSECTION_TOLERANCE);
+		}
+		
+		Set<Long> pairs = new HashSet<>();
+		for (List<Integer> cell : grid.getCells()) {
+			for (int i = 0; i < cell.size() - 1; i++) {
+				for (int j = i + 1; j < cell.size(); j++) {
+					// Segments are added in order, so cell.get(i) < cell.get(j)
+					pairs.add(((long) cell.get(i) << 32) | cell.get(j));
+				}
+			}
+		}
+		return toSortedArray(pairs);
+	}
+	
+	/**
+	 * Make each segment that contains another segment a compound segment. Only segments with
+	 * (nearly) the same slope can contain each other, so only those pairs are checked.
+	 * @param diag the diagram
+	 */
 	private static void handleOverlappingSegments(Diagram diag) {
 		List<Segment> segs = diag.getFiguresOfType(Segment.class);
-		for (int i = 0; i < segs.size() - 1; i++) {
-			Segment seg0 = segs.get(i);
-			for (int j = i + 1; j < segs.size(); j++) {
-				Segment seg1 = segs.get(j);
-				// If (1) the segments are not on top of each other, and (2) one contains both
-				// endpoints of the other
-				if (seg0.getLength() != seg1.getLength() &&
-						(seg0.containsSegment(seg1) || seg1.containsSegment(seg0))) {
-					// Make the longer one a compound segment
-					Segment longer = seg0.getLength() > seg1.getLength() ? seg0 : seg1;
-					Segment shorter = seg0.getLength() > seg1.getLength() ? seg1 : seg0;
-					diag.markAsCompoundSegment(longer);
-					diag.addComponentVertices(longer.getName(), shorter.getVerticesList());
+		// The indices of the segments, grouped by slope
+		Map<Float, List<Integer>> slopes = new HashMap<>();
+		for (int i = 0; i < segs.size(); i++) {
+			final Float slope = getSlopeKey(segs.get(i));
+			List<Integer> indices = slopes.get(slope);
+			if (indices == null) {
+				indices = new ArrayList<>();
+				slopes.put(slope, indices);
+			}
+			indices.add(i);
+		}
+		// Pair up the segments with the same slope. Slopes are rounded, so slopes that are
+		// off by a rounding error can end up in adjacent groups, which are checked as well
+		Set<Long> pairs = new HashSet<>();
+		for (int i = 0; i < segs.size(); i++) {
+			final long slope = Math.round(getSlopeKey(segs.get(i)) * SLOPE_KEY_MULTIPLIER);
+			for (long neighbor = slope - 1; neighbor <= slope + 1; neighbor++) {
+				// (Rounded vertical slopes are the largest int)
+				if (neighbor < Integer.MIN_VALUE || neighbor > Integer.MAX_VALUE)
+					continue;
+				List<Integer> indices = slopes.get((int) neighbor / SLOPE_KEY_MULTIPLIER);
+				if (indices == null)
+					continue;
+				for (int j : indices) {
+					if (j > i)
+						pairs.add(((long) i << 32) | j);
 				}
 			}
 		}
+		for (long pair : toSortedArray(pairs)) {
+			Segment seg0 = segs.get((int) (pair >>> 32));
+			Segment seg1 = segs.get((int) pair);
+			// If (1) the segments are not on top of each other, and (2) one contains both
+			// endpoints of the other
+			if (seg0.getLength() != seg1.getLength() &&
+					(seg0.containsSegment(seg1) || seg1.containsSegment(seg0))) {
+				// Make the longer one a compound segment
+				Segment longer = seg0.getLength() > seg1.getLength() ? seg0 : seg1;
+				Segment shorter = seg0.getLength() > seg1.getLength() ? seg1 : seg0;
+				diag.markAsCompoundSegment(longer);
+				diag.addComponentVertices(longer.getName(), shorter.getVerticesList());
+			}
+		}
 	}
 	
 	/**
-	 * Identify hidden triangles in a diagram
+	 * Identify hidden triangles in a diagram.
+	 * <p>
+	 * The triangles are the 3-cycles of the graph whose nodes are the vertices and whose
+	 * edges are the segments (including hidden segments). Each edge is directed from the
+	 * vertex with the lower degree to the one with the higher degree (ties are broken by
+	 * index), so each vertex has few outgoing edges, and each triangle is found exactly once,
+	 * by pairing an edge u->v with the outgoing edges of u and v that lead to the same
+	 * vertex. Three vertices that lie on the same line (see
+	 * {@link Diagram#areCollinear(char, char, char)}) form segments, but no triangle.
 	 * @param diag the diagram
 	 */
 	private static void addHiddenTriangles(Diagram diagram) {
-		for (Angle angle : diagram.getAllAnglesAndSynonyms()) {
-			String originalAngleName = angle.getName();
-			// Vertices
-			String sharedVert = originalAngleName.substring(1, 2);
-			String v0 = originalAngleName.substring(0, 1);
-			String v1 = originalAngleName.substring(2); 
-			// Derive three hypothetical segments that WOULD exist if there was a hidden triangle
-			String[] hypoSegs = { v0 + sharedVert, sharedVert + v1, v0 + v1 };
-			
-			// Check if the three derived segments exist in the diagram
-			if (!diagram.containsFigures(hypoSegs))
-				continue;
-			
-			// New triangle
-			Vertex vertex0 = (Vertex) angle.getChild(v0);
-			Vertex vertex1 = (Vertex) angle.getChild(v1);
-			Vertex shared = (Vertex) angle.getChild(sharedVert);
-			Triangle triangle = new Triangle(vertex0, shared, vertex1);
-			diagram.addHiddenFigure(triangle);
+		List<Segment> segs = diagram.getFiguresOfType(Segment.class);
+		
+		// Number the vertices, and get the endpoints of each segment
+		Map<Character, Integer> vertexIds = new HashMap<>();
+		List<Vertex> vertices = new ArrayList<>();
+		int[][] endpoints = new int[segs.size()][2];
+		for (int i = 0; i < segs.size(); i++) {
+			Vertex[] segVertices = segs.get(i).getVertices();
+			for (int k = 0; k < 2; k++) {
+				Integer id = vertexIds.get(segVertices[k].getNameChar());
+				if (id == null) {
+					id = vertices.size();
+					vertexIds.put(segVertices[k].getNameChar(), id);
+					vertices.add(segVertices[k]);
+				}
+				endpoints[i][k] = id;
+			}
+		}
+		final int n = vertices.size();
+		int[] degree = new int[n];
+		for (int[] edge : endpoints) {
+			degree[edge[0]]++;
+			degree[edge[1]]++;
+		}
+		
+		// The outgoing edges of each vertex: the vertex each one leads to, and its segment
+		int[][] outVertices = new int[n][];
+		int[][] outSegs = new int[n][];
+		int[] outCount = new int[n];
+		for (int u = 0; u < n; u++) {
+			outVertices[u] = new int[degree[u]];
+			outSegs[u] = new int[degree[u]];
+		}
+		for (int i = 0; i < endpoints.length; i++) {
+			int u = endpoints[i][0];
+			int v = endpoints[i][1];
+			if (degree[u] > degree[v] || (degree[u] == degree[v] && u > v)) {
+				u = endpoints[i][1];
+				v = endpoints[i][0];
+			}
+			outVertices[u][outCount[u]] = v;
+			outSegs[u][outCount[u]++] = i;
+		}
+		
+		// For the current vertex u, the segment from u to each vertex that u leads to
+		// (or -1)
+		int[] segFromU = new int[n];
+		Arrays.fill(segFromU, -1);
+		for (int u = 0; u < n; u++) {
+			for (int k = 0; k < outCount[u]; k++) {
+				segFromU[outVertices[u][k]] = outSegs[u][k];
+			}
+			for (int k = 0; k < outCount[u]; k++) {
+				final int v = outVertices[u][k];
+				for (int l = 0; l < outCount[v]; l++) {
+					final int w = outVertices[v][l];
+					// If the segments UV, VW and UW exist, and U, V and W are not collinear
+					if (segFromU[w] >= 0 && !diagram.areCollinear(vertices.get(u).getNameChar(),
+							vertices.get(v).getNameChar(), vertices.get(w).getNameChar())) {
+						Triangle triangle = new Triangle(vertices.get(v), vertices.get(u),
+								vertices.get(w));
+						diagram.addHiddenFigure(triangle);
+					}
+				}
+			}
+			for (int k = 0; k < outCount[u]; k++) {
+				segFromU[outVertices[u][k]] = -1;
+			}
 		}
 	}
 	
+	/**
+	 * Make each pair of angles that form a linear pair (angles that share a center and one
+	 * ray, and whose other rays point in opposite directions) supplementary.
+	 * @param diag the diagram
+	 */
 	private static void identifySupplementaryAngles(Diagram diag) {
 		List<Angle> angles = diag.getFiguresOfType(Angle.class);
-		for (int i = 0; i < angles.size() - 1; i++) {
-			Angle a = angles.get(i);
-			for (int j = i + 1; j < angles.size(); j++) {
-				Angle b = angles.get(j);
-				// Get the orientation of the angles
-				final int orientation = ProofUtils.compareAngleSynonyms(a, b);
-				// -4 means that angles are either vertical angles, or _|_ (which is
-				// what we want)
-				if (orientation == -4 && !ProofUtils.areVerticalAngles(a, b)) {
-					// Add supplementary FigureRelation
-					FigureRelation suppRel = new FigureRelation(SUPPLEMENTARY, a, b);
-					suppRel.setReason(ProofReasons.DEF_SUPP);
-					diag.addFigureRelation(suppRel);
-				}
+		for (long pair : getAnglePairs(angles, false)) {
+			Angle a = angles.get((int) (pair >>> 32));
+			Angle b = angles.get((int) pair);
+			// Add supplementary FigureRelation
+			FigureRelation suppRel = new FigureRelation(SUPPLEMENTARY, a, b);
+			suppRel.setReason(ProofReasons.DEF_SUPP);
+			diag.addFigureRelation(suppRel);
+		}
+	}
+	
+	/**
+	 * Get the pairs of the given angles that are vertical angles, or that form linear pairs.
+	 * <p>
+	 * Only angles that share a center can be vertical or form a linear pair, and their sides
+	 * lie on the same two lines through the center. Each angle is indexed by its center and
+	 * rays (see {@link AngleRays}), so the vertical angle of an angle (both rays reversed)
+	 * and the angles that form a linear pair with it (one ray reversed) are found by lookup,
+	 * in one sweep over the angles.
+	 * @param angles the angles (no two of which can be synonyms)
+	 * @param vertical true to get the vertical angles, false to get the linear pairs
+	 * @return the pairs of indices (see {@link Preprocessor#toSortedArray(Set)})
+	 */
+	private static long[] getAnglePairs(List<Angle> angles, boolean vertical) {
+		AngleRays[] rays = new AngleRays[angles.size()];
+		Map<AngleRays, Integer> indices = new HashMap<>();
+		for (int i = 0; i < angles.size(); i++) {
+			rays[i] = AngleRays.of(angles.get(i));
+			if (rays[i] != null && !indices.containsKey(rays[i]))
+				indices.put(rays[i], i);
+		}
+		Set<Long> pairs = new HashSet<>();
+		for (int i = 0; i < angles.size(); i++) {
+			if (rays[i] == null)
+				continue;
+			AngleRays[] partners = vertical ? new AngleRays[] { rays[i].getVertical() }
+					: rays[i].getLinearPairs();
+			for (AngleRays partner : partners) {
+				// Each pair is found from both of its angles, so only keep it once
+				Integer j = indices.get(partner);
+				if (j != null && j > i)
+					pairs.add(((long) i << 32) | j);
 			}
 		}
+		return toSortedArray(pairs);
 	}
 	
 	/**
@@ -404,13 +671,15 @@ public final class Preprocessor {
 	 * @param diagram the diagram
 	 */
 	private static void preprocessBisectingPairs(Diagram diagram) {
+		// The vertices of the diagram, hashed by location
+		VertexHash vertices = new VertexHash(diagram.getFiguresOfType(Vertex.class));
 		// Total number of FigureRelations before modification
 		final int relCount = diagram.getFigureRelations().size();
 		for (int i = 0; i < relCount; i++) {
 			FigureRelation pair = diagram.getFigureRelations().get(i);
 			if (pair.getRelationType() == FigureRelationType.BISECTS) {
 				if (pair.getFigure1() instanceof Segment) {
-					handleSegmentBisector(diagram, pair);
+					handleSegmentBisector(diagram, vertices, pair);
 				} else {
 					handleAngleBisector(diagram, pair);
 				}
@@ -418,13 +687,14 @@ public final class Preprocessor {
 		}
 	}
 	
-	private static void handleSegmentBisector(Diagram diagram, FigureRelation pair) {
+	private static void handleSegmentBisector(Diagram diagram, VertexHash vertices,
+			FigureRelation pair) {
 		// Get the segment being bisecTED
 		Segment bisectedSeg = pair.getFigure1();
 		// Get the midpoint loc of the second segment (segment being bisecTED)
 		Vec2 midptLoc = bisectedSeg.getCenter();
 		// Get the vertex at that position
-		Vertex midpt = getVertexAtLoc(diagram, midptLoc);
+		Vertex midpt = vertices.get(midptLoc);
 		
 		if (midpt == null) {
 			throw new NullPointerException("No vertex at midpoint of segment: " + bisectedSeg);
@@ -444,8 +714,7 @@ public final class Preprocessor {
 		bisectsRel.addParents(pair.getParents());
 		bisectsRel.setReason(pair.getReason());
 		
-		final int REL_INDEX = diagram.getFigureRelations().indexOf(pair);
-		diagram.getFigureRelations().set(REL_INDEX, bisectsRel);
+		diagram.replaceFigureRelation(pair, bisectsRel);
 	}
 	
 	private static void handleAngleBisector(Diagram diagram, FigureRelation pair) {
@@ -467,8 +736,7 @@ public final class Preprocessor {
 		newRel.setReason(pair.getReason());
 
 		// Replace the original figure relation
-		final int REL_INDEX = diagram.getFigureRelations().indexOf(pair);
-		diagram.getFigureRelations().set(REL_INDEX, newRel);
+		diagram.replaceFigureRelation(pair, newRel);
 	}
 	
 	/**
@@ -480,6 +748,8 @@ public final class Preprocessor {
 	 * @param diagram the diagram
 	 */
 	private static void preprocessPerpendicularPairs(Diagram diagram) {
+		// The vertices of the diagram, hashed by location
+		VertexHash vertices = new VertexHash(diagram.getFiguresOfType(Vertex.class));
 		// Total number of FigureRelations before modification
 		final int relCount = diagram.getFigureRelations().size();
 		for (int i = 0; i < relCount; i++) {
@@ -490,7 +760,7 @@ public final class Preprocessor {
 				Segment seg1 = pair.getFigure1(); // The intersectED segment
 				
 				// Get the vertex at the location at which the two segments intersect
-				Vertex poi = getVertexAtLoc(diagram, Segment.getPointOfIntersection(seg0, seg1));
+				Vertex poi = vertices.get(Segment.getPointOfIntersection(seg0, seg1));
 				
 				// REPLACE THE GIVEN FigureRelation WITH A MORE DESCRIPIVE 
 				// PerpendicularFigureRelation
@@ -504,25 +774,24 @@ public final class Preprocessor {
 				perpRel.addParents(pair.getParents());
 				perpRel.setReason(pair.getReason());
 				
-				final int REL_INDEX = diagram.getFigureRelations().indexOf(pair);
-				diagram.getFigureRelations().set(REL_INDEX, perpRel);
+				diagram.replaceFigureRelation(pair, perpRel);
 			}
 		}
 	}
-		
+	
+	/**
+	 * Make each pair of vertical angles congruent.
+	 * @param diagram the diagram
+	 */
 	private static void handleVerticalAngles(Diagram diagram) {
 		List<Angle> angles = diagram.getFiguresOfType(Angle.class);
-		for (int i = 0; i < angles.size() - 1; i++) {
-			Angle a0 = angles.get(i);
-			for (int j = i + 1; j < angles.size(); j++) {
-				Angle a1 = angles.get(j);
-				// If they are vertical angles, make them congruent
-				if (ProofUtils.areVerticalAngles(a0, a1)) {
-					FigureRelation rel = new FigureRelation(CONGRUENT, a0, a1);
-					rel.setReason(ProofReasons.VERTICAL_ANGLES_CONGRUENT);
-					diagram.addFigureRelation(rel);
-				}
-			}
+		for (long pair : getAnglePairs(angles, true)) {
+			Angle a0 = angles.get((int) (pair >>> 32));
+			Angle a1 = angles.get((int) pair);
+			// Vertical angles are congruent
+			FigureRelation rel = new FigureRelation(CONGRUENT, a0, a1);
+			rel.setReason(ProofReasons.VERTICAL_ANGLES_CONGRUENT);
+			diagram.addFigureRelation(rel);
 		}
 	}
 	
@@ -530,40 +799,14 @@ public final class Preprocessor {
 	 * UTILITY METHODS
 	 */
 	
-	private static Vertex getSegmentEndpoint(Diagram diag, Vec2 loc) {
-		for (Segment seg : diag.getFiguresOfType(Segment.class)) {
-			for (Vertex vertex : seg.getVertices()) {
-				// Dist to account for small rounding errors
-				if (Vec2.dist(vertex.getCenter(), loc) < 0.05f) {
-					return vertex;
-				}
-			}
-		}
-		return null;
-	}
-	
 	private static char generateNewVertexName(Diagram diag) {
-		outer:
-		for (char c = 'A'; c <= 'Z';) {
-			for (Figure fig : diag.getFigures()) {
-				if (fig.isValidName("" + c)) {
-					++c;
-					continue outer;
-				}
-			}
-			return c;
+		for (char c = 'A'; c <= 'Z'; c++) {
+			if (!diag.containsFigure(String.valueOf(c)))
+				return c;
 		}
 		throw new NullPointerException("No more available vertex names.");
 	}
 		
-	private static Vertex getVertexAtLoc(Diagram diag, Vec2 loc) {
-		for (Vertex vert : diag.getFiguresOfType(Vertex.class))
-			// This prevents minor rounding errors
-			if (Vec2.dist(vert.getCenter(), loc) < 0.05f)
-				return vert;
-		return null;
-	}
-	
 	/*
 	 * END UTILITY METHODS
 	 */
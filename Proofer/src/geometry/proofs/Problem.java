@@ -0,0 +1,278 @@
+package geometry.proofs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+
+/**
+ * A proof problem: the {@link Figure}s of a diagram, the given statements, and the statement
+ * to prove. Statements refer to figures by name (including hidden figures, which are only
+ * found once the diagram is preprocessed, see {@link Preprocessor#generateDiagram(Problem)}).
+ * <p>
+ * A problem can also hold the named points of the diagram (so that the names of hidden
+ * vertices can be matched to their locations), and the {@link Derivation}s of a solved
+ * diagram (see {@link ProblemWriter}).
+ * <p>
+ * A problem holds its own copies of its figures and points, so that it can be solved on
+ * another thread while the originals are being edited (for example, on the canvas).
+ */
+public class Problem {
+
+	private String name;
+	private List<Vertex> vertices;
+	private List<Figure> figures;
+	private List<Statement> givens;
+	private Statement goal;
+	private List<Derivation> relations;
+
+	/**
+	 * @param name the name of the problem (used to identify it in reports)
+	 */
+	public Problem(String name) {
+		this.name = name;
+		vertices = new ArrayList<>();
+		figures = new ArrayList<>();
+		givens = new ArrayList<>();
+		relations = new ArrayList<>();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Add a copy of a named point of the diagram. The vertices of the figures do not need to
+	 * be added.
+	 */
+	public void addVertex(Vertex vertex) {
+		vertices.add(new Vertex(Objects.requireNonNull(vertex)));
+	}
+
+	/**
+	 * Add copies of every point of the given {@link Diagram}, including its hidden vertices
+	 * (for example, where two segments cross), so that the statements can be matched to the
+	 * figures when the problem is read back (see {@link ProblemWriter}).
+	 * @param diagram the diagram of the figures of this problem
+	 */
+	public void addVertices(Diagram diagram) {
+		for (Vertex vertex : diagram.getFiguresOfType(Vertex.class)) {
+			addVertex(vertex);
+		}
+	}
+
+	/**
+	 * @return an unmodifiable view of the named points
+	 */
+	public List<Vertex> getVertices() {
+		return Collections.unmodifiableList(vertices);
+	}
+
+	/**
+	 * Add a copy of the given figure.
+	 * @throws IllegalArgumentException if the figure is neither a {@link Segment} nor a
+	 * {@link Triangle}
+	 */
+	public void addFigure(Figure fig) {
+		if (fig instanceof Triangle)
+			figures.add(new Triangle((Triangle) fig));
+		else if (fig instanceof Segment)
+			figures.add(new Segment((Segment) fig));
+		else
+			throw new IllegalArgumentException("Cannot add " + Objects.requireNonNull(fig)
+					.getClass().getSimpleName() + " " + fig + " to problem " + name);
+	}
+
+	/**
+	 * @return an unmodifiable view of the figures
+	 */
+	public List<Figure> getFigures() {
+		return Collections.unmodifiableList(figures);
+	}
+
+	public void addGiven(Statement given) {
+		givens.add(Objects.requireNonNull(given));
+	}
+
+	/**
+	 * @return an unmodifiable view of the givens
+	 */
+	public List<Statement> getGivens() {
+		return Collections.unmodifiableList(givens);
+	}
+
+	public Statement getGoal() {
+		return goal;
+	}
+
+	public void setGoal(Statement goal) {
+		this.goal = goal;
+	}
+
+	/**
+	 * Add a derived relation. Its parents must already have been added.
+	 * @throws IllegalArgumentException if a parent was not added yet
+	 */
+	public void addRelation(Derivation relation) {
+		for (int parent : relation.parents) {
+			if (parent >= relations.size())
+				throw new IllegalArgumentException("Parent " + parent + " of " 
+						+ relation.getStatement() + " does not exist");
+		}
+		relations.add(relation);
+	}
+
+	/**
+	 * Add the given {@link FigureRelation}s (for example, the saturated relations of a solved
+	 * {@link Diagram}) as {@link Derivation}s, along with their ancestors. Each relation is
+	 * added after its parents.
+	 * @param rels the relations
+	 */
+	public void addRelations(Collection<FigureRelation> rels) {
+		Map<FigureRelation, Integer> indices = new IdentityHashMap<>();
+		for (FigureRelation rel : rels) {
+			addRelation(rel, indices);
+		}
+	}
+
+	/**
+	 * Add the given relation after its ancestors (depth first, without recursion, because
+	 * derivation chains can be long).
+	 * @param indices the indices of the relations that were added (or -1 while the ancestors
+	 * of a relation are being added)
+	 */
+	private void addRelation(FigureRelation root, Map<FigureRelation, Integer> indices) {
+		if (indices.containsKey(root))
+			return;
+		List<FigureRelation> stack = new ArrayList<>();
+		stack.add(root);
+		indices.put(root, -1);
+		while (!stack.isEmpty()) {
+			FigureRelation rel = stack.get(stack.size() - 1);
+			// Add the parents first
+			boolean parentsAdded = true;
+			for (FigureRelation parent : rel.getParents()) {
+				if (!indices.containsKey(parent)) {
+					indices.put(parent, -1);
+					stack.add(parent);
+					parentsAdded = false;
+					break;
+				}
+			}
+			if (!parentsAdded)
+				continue;
+			stack.remove(stack.size() - 1);
+
+			// Link the parents (a parent that is still being added is part of a cycle)
+			int[] parents = new int[rel.getParents().size()];
+			int parentCount = 0;
+			for (FigureRelation parent : rel.getParents()) {
+				final int index = indices.get(parent);
+				if (index >= 0)
+					parents[parentCount++] = index;
+			}
+			Figure fig1 = rel.getFigure1();
+			indices.put(rel, relations.size());
+			relations.add(new Derivation(new Statement(rel.getRelationType(), 
+					rel.getFigure0().toString(), fig1 == null ? null : fig1.toString()),
+					rel.getReason(), Arrays.copyOf(parents, parentCount)));
+		}
+	}
+
+	/**
+	 * @return an unmodifiable view of the derived relations, each after its parents
+	 */
+	public List<Derivation> getRelations() {
+		return Collections.unmodifiableList(relations);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * A statement about one or two figures, which are referred to by name: "AB" for a segment,
+	 * "<ABC" for an angle, "^ABC" for a triangle (see {@link ProofUtils#ANGLE_SYMBOL} and
+	 * {@link ProofUtils#DELTA}), and "A" for a vertex.
+	 */
+	public static class Statement {
+		private FigureRelationType type;
+		private String figure0;
+		private String figure1;
+
+		/**
+		 * @param type the type of the relation
+		 * @param figure0 the name of the first figure
+		 * @param figure1 the name of the second figure (null for single figure relation types)
+		 */
+		public Statement(FigureRelationType type, String figure0, String figure1) {
+			this.type = Objects.requireNonNull(type);
+			this.figure0 = Objects.requireNonNull(figure0);
+			this.figure1 = figure1;
+		}
+
+		public FigureRelationType getType() {
+			return type;
+		}
+
+		public String getFigure0() {
+			return figure0;
+		}
+
+		public String getFigure1() {
+			return figure1;
+		}
+
+		@Override
+		public String toString() {
+			return type + " " + figure0 + (figure1 == null ? "" : " " + figure1);
+		}
+	}
+
+	/**
+	 * A relation that was derived while solving a proof: a {@link Statement}, the reason for
+	 * it, and its parents (by index in {@link Problem#getRelations()}).
+	 */
+	public static class Derivation {
+		private Statement statement;
+		private ProofReasons reason;
+		private int[] parents;
+
+		/**
+		 * @param statement the statement
+		 * @param reason the reason (null for {@link ProofReasons#NONE})
+		 * @param parents the indices of the parents
+		 */
+		public Derivation(Statement statement, ProofReasons reason, int[] parents) {
+			this.statement = Objects.requireNonNull(statement);
+			this.reason = reason == null ? ProofReasons.NONE : reason;
+			this.parents = parents.clone();
+		}
+
+		public Statement getStatement() {
+			return statement;
+		}
+
+		public ProofReasons getReason() {
+			return reason;
+		}
+
+		public int[] getParents() {
+			return parents.clone();
+		}
+
+		@Override
+		public String toString() {
+			return statement + " " + reason.name() + " " + Arrays.toString(parents);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package geometry.proofs;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import geometry.Vec2;
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+
+/**
+ * Reads {@link Problem}s from text, one at a time, so that large sets of problems can be
+ * read without holding all of them in memory. Each line is a command:
+ * <pre>
+ * # A comment
+ * proofer 1                    (the version of the format, before the first problem)
+ * problem isosceles-1          (starts a new problem)
+ * vertex A 0 10                (a named point and its coordinates)
+ * vertex B -5 0
+ * vertex C 5 0
+ * vertex D 0 0
+ * triangle ABC                 (a triangle between existing vertices)
+ * segment AD                   (a segment between existing vertices)
+ * given congruent AB AC        (a given statement, see {@link Problem.Statement})
+ * goal congruent &lt;ABC &lt;ACB     (the statement to prove)
+ * relation congruent AB AC GIVEN        (a derived relation: the statement, the reason,
+ * relation isosceles ^ABC ISOSCELES 0    and the indices of its parents among the
+ *                                        previous relations)
+ * </pre>
+ * If the text has no "problem" command, it holds one problem with the default name.
+ * Vertex names are only valid within their problem. Text without a version is read as
+ * version 1.
+ *
+ * @see ProblemWriter
+ */
+public class ProblemReader implements Closeable {
+
+	/** The newest version of the format that can be read */
+	public static final int FORMAT_VERSION = 1;
+
+	private BufferedReader in;
+	private String defaultName;
+	// The number of the current line
+	private int lineNumber;
+	// The "problem" command that starts the next problem (if it was already read)
+	private String pendingName;
+	private int problemCount;
+	private int version = 1;
+
+	/**
+	 * @param in the text
+	 * @param defaultName the name of the problems that are not named (used to report errors
+	 * as well)
+	 */
+	public ProblemReader(Reader in, String defaultName) {
+		this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		this.defaultName = defaultName;
+	}
+
+	/**
+	 * Read the next {@link Problem}.
+	 * @return the problem, or null if there are no more problems
+	 * @throws IOException if the text could not be read
+	 * @throws IllegalArgumentException if the text is not valid
+	 */
+	public Problem next() throws IOException {
+		Problem problem = null;
+		Map<Character, Vec2> vertices = new HashMap<>();
+		if (pendingName != null) {
+			problem = new Problem(pendingName);
+			pendingName = null;
+		}
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] tokens = line.split("\\s+");
+			final String command = tokens[0].toLowerCase(Locale.ROOT);
+
+			if (command.equals("proofer")) {
+				expectTokens(tokens, 2, 2);
+				if (problem != null || problemCount > 0)
+					throw error("The version must come before the first problem");
+				version = parseVersion(tokens[1]);
+				continue;
+			}
+			if (command.equals("problem")) {
+				expectTokens(tokens, 2, 2);
+				// The problem is complete
+				if (problem != null) {
+					pendingName = tokens[1];
+					return finish(problem);
+				}
+				problem = new Problem(tokens[1]);
+				continue;
+			}
+			if (problem == null)
+				problem = new Problem(problemCount == 0 ? defaultName
+						: defaultName + "#" + (problemCount + 1));
+
+			switch (command) {
+			case "vertex":
+				expectTokens(tokens, 4, 4);
+				final char name = parseVertexName(tokens[1]);
+				if (vertices.containsKey(name))
+					throw error("Vertex " + name + " already exists");
+				final Vec2 loc = new Vec2(parseCoordinate(tokens[2]), parseCoordinate(tokens[3]));
+				vertices.put(name, loc);
+				problem.addVertex(new Vertex(name, loc));
+				break;
+			case "segment":
+				expectTokens(tokens, 2, 2);
+				problem.addFigure(new Segment(getVertices(vertices, tokens[1], 2)));
+				break;
+			case "triangle":
+				expectTokens(tokens, 2, 2);
+				Vertex[] verts = getVertices(vertices, tokens[1], 3);
+				problem.addFigure(new Triangle(verts[0], verts[1], verts[2]));
+				break;
+			case "given":
+				problem.addGiven(parseStatement(tokens));
+				break;
+			case "goal":
+				if (problem.getGoal() != null)
+					throw error("Problem " + problem + " already has a goal");
+				problem.setGoal(parseStatement(tokens));
+				break;
+			case "relation":
+				problem.addRelation(parseDerivation(tokens, problem.getRelations().size()));
+				break;
+			default:
+				throw error("Unknown command: " + tokens[0]);
+			}
+		}
+		return problem == null ? null : finish(problem);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private Problem finish(Problem problem) {
+		if (problem.getGoal() == null)
+			throw error("Problem " + problem + " has no goal");
+		problemCount++;
+		return problem;
+	}
+
+	/**
+	 * Get the version of the format that the text was written in.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	private int parseVersion(String token) {
+		try {
+			final int value = Integer.parseInt(token);
+			if (value >= 1 && value <= FORMAT_VERSION)
+				return value;
+		} catch (NumberFormatException e) {
+		}
+		throw error("Unsupported version: " + token + " (the newest supported version is "
+				+ FORMAT_VERSION + ")");
+	}
+
+	/**
+	 * Parse a statement: the type, then one or two figures (depending on the type).
+	 */
+	private Problem.Statement parseStatement(String[] tokens) {
+		expectTokens(tokens, 3, 4);
+		final FigureRelationType type = parseType(tokens[1]);
+		if (getFigureCount(type) != tokens.length - 2)
+			throw error("Wrong number of figures for " + type);
+		return new Problem.Statement(type, tokens[2], tokens.length == 4 ? tokens[3] : null);
+	}
+
+	/**
+	 * Parse a derived relation: a statement, then the reason and the indices of the parents.
+	 * @param relationCount the number of relations that were read before (the parents must
+	 * be among them)
+	 */
+	private Problem.Derivation parseDerivation(String[] tokens, int relationCount) {
+		if (tokens.length < 4)
+			throw error("Wrong number of arguments for " + tokens[0]);
+		final FigureRelationType type = parseType(tokens[1]);
+		final int reasonIndex = 2 + getFigureCount(type);
+		if (tokens.length <= reasonIndex)
+			throw error("Wrong number of figures for " + type);
+		Problem.Statement statement = new Problem.Statement(type, tokens[2],
+				reasonIndex == 4 ? tokens[3] : null);
+
+		ProofReasons reason;
+		try {
+			reason = ProofReasons.valueOf(tokens[reasonIndex].toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw error("Unknown reason: " + tokens[reasonIndex]);
+		}
+		int[] parents = new int[tokens.length - reasonIndex - 1];
+		for (int i = 0; i < parents.length; i++) {
+			try {
+				parents[i] = Integer.parseInt(tokens[reasonIndex + 1 + i]);
+			} catch (NumberFormatException e) {
+				parents[i] = -1;
+			}
+			if (parents[i] < 0 || parents[i] >= relationCount)
+				throw error("Invalid parent: " + tokens[reasonIndex + 1 + i]);
+		}
+		return new Problem.Derivation(statement, reason, parents);
+	}
+
+	private FigureRelationType parseType(String token) {
+		try {
+			return FigureRelationType.valueOf(token.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw error("Unknown relation type: " + token);
+		}
+	}
+
+	private static int getFigureCount(FigureRelationType type) {
+		return FigureRelationType.isSingleFigureRelationType(type) ? 1 : 2;
+	}
+
+	/**
+	 * Get new vertices at the locations of the vertices with the given names.
+	 */
+	private Vertex[] getVertices(Map<Character, Vec2> vertices, String names, int count) {
+		if (names.length() != count)
+			throw error("Expected " + count + " vertices: " + names);
+		Vertex[] result = new Vertex[count];
+		for (int i = 0; i < count; i++) {
+			final char name = parseVertexName(names.substring(i, i + 1));
+			Vec2 loc = vertices.get(name);
+			if (loc == null)
+				throw error("Vertex " + name + " does not exist");
+			result[i] = new Vertex(name, loc);
+		}
+		return result;
+	}
+
+	private char parseVertexName(String name) {
+		if (name.length() != 1 || name.charAt(0) < 'A' || name.charAt(0) > 'Z')
+			throw error("Invalid vertex name: " + name);
+		return name.charAt(0);
+	}
+
+	private float parseCoordinate(String coord) {
+		try {
+			final float value = Float.parseFloat(coord);
+			if (Float.isNaN(value) || Float.isInfinite(value))
+				throw error("Invalid coordinate: " + coord);
+			return value;
+		} catch (NumberFormatException e) {
+			throw error("Invalid coordinate: " + coord);
+		}
+	}
+
+	private void expectTokens(String[] tokens, int min, int max) {
+		if (tokens.length < min || tokens.length > max)
+			throw error("Wrong number of arguments for " + tokens[0]);
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(defaultName + ":" + lineNumber + ": " + message);
+	}
+}
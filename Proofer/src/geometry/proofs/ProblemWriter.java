@@ -0,0 +1,146 @@
+package geometry.proofs;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import geometry.Vec2;
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+import geometry.shapes.VertexHash;
+import geometry.shapes.VertexShape;
+
+/**
+ * Writes {@link Problem}s as text, one at a time, in the format read by
+ * {@link ProblemReader}. The version of the format is written before the first problem.
+ */
+public class ProblemWriter implements Closeable, Flushable {
+
+	private Writer out;
+	private boolean headerWritten = false;
+
+	public ProblemWriter(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+	}
+
+	/**
+	 * Write the given {@link Problem}: its named points, its figures, its given, its goal,
+	 * and its derived relations (if any).
+	 * @param problem the problem
+	 * @throws IOException if the text could not be written
+	 * @throws IllegalArgumentException if the problem cannot be written (for example, if its
+	 * name contains whitespace, or if two vertices with the same name lie at different
+	 * locations)
+	 */
+	public void write(Problem problem) throws IOException {
+		if (!problem.getName().matches("\\S+"))
+			throw new IllegalArgumentException("Invalid problem name: \"" + problem + "\"");
+		if (problem.getGoal() == null)
+			throw new IllegalArgumentException("Problem " + problem + " has no goal");
+
+		// Gather the named points, followed by the vertices of the figures
+		Map<Character, Vec2> vertices = new LinkedHashMap<>();
+		for (Vertex vertex : problem.getVertices()) {
+			addVertex(problem, vertices, vertex);
+		}
+		for (Figure fig : problem.getFigures()) {
+			if (!(fig instanceof Segment || fig instanceof Triangle))
+				throw new IllegalArgumentException("Cannot write " + fig.getClass()
+						.getSimpleName() + " " + fig);
+			for (Vertex vertex : ((VertexShape) fig).getVertices()) {
+				addVertex(problem, vertices, vertex);
+			}
+		}
+
+		if (!headerWritten) {
+			writeLine("proofer " + ProblemReader.FORMAT_VERSION);
+			headerWritten = true;
+		} else {
+			// Separate the problems
+			out.write(System.lineSeparator());
+		}
+		writeLine("problem " + problem.getName());
+		for (Map.Entry<Character, Vec2> vertex : vertices.entrySet()) {
+			writeLine("vertex " + vertex.getKey() + " " + formatCoordinate(vertex.getValue()
+					.getX()) + " " + formatCoordinate(vertex.getValue().getY()));
+		}
+		for (Figure fig : problem.getFigures()) {
+			writeLine((fig instanceof Segment ? "segment " : "triangle ") + fig.getName());
+		}
+		for (Problem.Statement given : problem.getGivens()) {
+			writeLine("given " + formatStatement(given));
+		}
+		writeLine("goal " + formatStatement(problem.getGoal()));
+		for (Problem.Derivation rel : problem.getRelations()) {
+			StringBuilder line = new StringBuilder("relation ");
+			line.append(formatStatement(rel.getStatement())).append(' ')
+					.append(rel.getReason().name());
+			for (int parent : rel.getParents()) {
+				line.append(' ').append(parent);
+			}
+			writeLine(line.toString());
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeLine(String line) throws IOException {
+		out.write(line);
+		out.write(System.lineSeparator());
+	}
+
+	private static void addVertex(Problem problem, Map<Character, Vec2> vertices,
+			Vertex vertex) {
+		final char name = vertex.getNameChar();
+		if (name < 'A' || name > 'Z')
+			throw new IllegalArgumentException("Invalid vertex name in problem " + problem
+					+ ": " + vertex);
+		Vec2 loc = vertices.putIfAbsent(name, vertex.getCenter());
+		if (loc != null && !VertexHash.isSameLocation(loc, vertex.getCenter()))
+			throw new IllegalArgumentException("Vertex " + name + " of problem " + problem
+					+ " lies at more than one location");
+	}
+
+	/**
+	 * Format the given {@link Problem.Statement} (the single figure relation types have one
+	 * figure).
+	 */
+	private static String formatStatement(Problem.Statement statement) {
+		final FigureRelationType type = statement.getType();
+		if (FigureRelationType.isSingleFigureRelationType(type))
+			return type.name().toLowerCase(Locale.ROOT) + " " 
+					+ formatFigure(statement, statement.getFigure0());
+		return type.name().toLowerCase(Locale.ROOT) + " " 
+				+ formatFigure(statement, statement.getFigure0()) + " "
+				+ formatFigure(statement, statement.getFigure1());
+	}
+
+	private static String formatFigure(Problem.Statement statement, String figure) {
+		if (figure == null || !figure.matches("\\S+"))
+			throw new IllegalArgumentException("Incomplete statement: " + statement);
+		return figure;
+	}
+
+	/**
+	 * Format the given coordinate as compactly as possible, so that it is read back exactly
+	 * (for example, "5" instead of "5.0").
+	 */
+	private static String formatCoordinate(float coord) {
+		final String text = Float.toString(coord);
+		return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+	}
+}
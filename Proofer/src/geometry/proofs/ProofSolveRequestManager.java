@@ -1,52 +1,359 @@
 package geometry.proofs;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Solves proofs in the background, one at a time, in the order in which they were requested.
+ * <p>
+ * Each {@link Request} is solved on a worker thread, and its callbacks are called through the
+ * callback {@link Executor} given to the manager (for example, the JavaFX application thread),
+ * so that the thread that requested the proof is never blocked. A request can be cancelled
+ * through the {@link CompletableFuture} returned by
+ * {@link ProofSolveRequestManager#requestSolveProof(Request)}, and it is cancelled
+ * automatically if it runs for longer than its timeout. A request that is still waiting to
+ * be solved is superseded (cancelled) when a newer request with the same source is made.
+ */
 public final class ProofSolveRequestManager {
 
-	private static Queue<Request> queue = new LinkedList<>();
-	private static boolean isProcessingRequest;
-	
-	private ProofSolveRequestManager() {
-		throw new AssertionError("Do not instantiate an object of this class!");
-	}
-	
-	public static void requestSolveProof(Request request) {
-		queue.add(request);
-		solveNextProof();
-	}
-	
-	private static void solveNextProof() {
-		if (!isProcessingRequest && !queue.isEmpty()) {
-			isProcessingRequest = true;
-			Request current = queue.poll();
-			ProofSolver solver = new ProofSolver(current.getDiagram());
-			solver.solve();
-			current.onRequestCompleted(solver);
-			isProcessingRequest = false;			
-			solveNextProof();
-		}
-	}
-	
-	
+	/** The default time limit of a request, in milliseconds */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+	/** The minimum time between two progress updates of a request, in milliseconds */
+	private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+	private Executor callbackExecutor;
+	// Solves the proofs, one at a time
+	private ExecutorService worker;
+	// Cancels the proofs that take too long
+	private ScheduledExecutorService timer;
+	// The tasks that were not started yet, in order
+	private List<Task> queue;
+	// The task that is being solved (null if none, guarded by queue)
+	private Task running;
+
+	/**
+	 * @param callbackExecutor the executor through which the callbacks of the requests are
+	 * called (for example, Platform::runLater, for the JavaFX application thread)
+	 */
+	public ProofSolveRequestManager(Executor callbackExecutor) {
+		if (callbackExecutor == null)
+			throw new NullPointerException("Callback executor is null");
+		this.callbackExecutor = callbackExecutor;
+		worker = Executors.newSingleThreadExecutor(new DaemonThreadFactory("Proof solver"));
+		timer = Executors.newSingleThreadScheduledExecutor(
+				new DaemonThreadFactory("Proof solver timer"));
+		queue = new ArrayList<>();
+	}
+
+	/**
+	 * Request the given proof to be solved. If a request with the same source is still
+	 * waiting to be solved, it is cancelled.
+	 * @param request the request
+	 * @return the future of the solved {@link ProofSolver}. Cancelling it cancels the
+	 * request. If the request times out, it completes exceptionally with a
+	 * {@link TimeoutException}.
+	 */
+	public CompletableFuture<ProofSolver> requestSolveProof(Request request) {
+		final Task task = new Task(request);
+		// Cancelling the future stops the solver, if it is running
+		task.future.whenComplete((solver, e) -> {
+			if (task.future.isCancelled()) {
+				task.cancelSolver();
+				callbackExecutor.execute(request::onRequestCancelled);
+			}
+		});
+
+		synchronized (queue) {
+			// Supersede the older requests with the same source
+			if (request.getSource() != null) {
+				for (Iterator<Task> it = queue.iterator(); it.hasNext();) {
+					Task queued = it.next();
+					if (request.getSource().equals(queued.request.getSource())) {
+						it.remove();
+						queued.future.cancel(false);
+					}
+				}
+			}
+			queue.add(task);
+		}
+		worker.execute(() -> solve(task));
+		return task.future;
+	}
+
+	/**
+	 * Cancel all requests (including the one being solved), and stop the threads of this
+	 * manager. No more requests can be made.
+	 */
+	public void shutdown() {
+		synchronized (queue) {
+			for (Task task : queue) {
+				task.future.cancel(false);
+			}
+			queue.clear();
+			if (running != null)
+				running.future.cancel(false);
+		}
+		worker.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	/**
+	 * Solve the proof of the given task, on the worker thread.
+	 */
+	private void solve(Task task) {
+		synchronized (queue) {
+			queue.remove(task);
+			// The request was cancelled or superseded while it was waiting
+			if (task.future.isDone())
+				return;
+			running = task;
+		}
+
+		final Request request = task.request;
+		ScheduledFuture<?> timeout = null;
+		Diagram diagram = null;
+		ProgressReporter progress = null;
+		try {
+			if (request.getTimeoutMillis() > 0) {
+				timeout = timer.schedule(() -> {
+					task.timedOut = true;
+					task.cancelSolver();
+				}, request.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+			}
+			// Generating the diagram of a problem can take a while as well
+			diagram = request.getDiagram() != null ? request.getDiagram() 
+					: Preprocessor.generateDiagram(request.getProblem());
+			task.solver = new ProofSolver(diagram);
+			// The request was cancelled or timed out while the diagram was generated
+			if (task.future.isDone() || task.timedOut)
+				task.solver.cancel();
+			progress = new ProgressReporter(request, diagram);
+			diagram.getListeners().add(progress);
+			request.configureSolver(task.solver);
+			task.solver.solve();
+			if (task.future.complete(task.solver))
+				callbackExecutor.execute(() -> request.onRequestCompleted(task.solver));
+		} catch (CancellationException e) {
+			if (task.timedOut) {
+				task.future.completeExceptionally(new TimeoutException("Proof solving took "
+						+ "longer than " + request.getTimeoutMillis() + "ms"));
+				callbackExecutor.execute(request::onRequestTimedOut);
+			} else {
+				task.future.cancel(false);
+			}
+		} catch (Throwable e) {
+			// Complete the future even if the solver ran out of stack or memory, so that the
+			// request never waits forever
+			if (task.future.completeExceptionally(e))
+				callbackExecutor.execute(() -> request.onRequestFailed(e));
+		} finally {
+			synchronized (queue) {
+				running = null;
+			}
+			if (timeout != null)
+				timeout.cancel(false);
+			if (progress != null)
+				diagram.getListeners().remove(progress);
+		}
+	}
+
+	/**
+	 * A {@link Request} and the state of solving it.
+	 */
+	private static class Task {
+		private final Request request;
+		// Created on the worker thread, once the diagram is generated
+		private volatile ProofSolver solver;
+		private final CompletableFuture<ProofSolver> future;
+		private volatile boolean timedOut = false;
+
+		public Task(Request request) {
+			this.request = request;
+			future = new CompletableFuture<>();
+		}
+
+		/**
+		 * Stop the solver, if it was created.
+		 */
+		public void cancelSolver() {
+			final ProofSolver s = solver;
+			if (s != null)
+				s.cancel();
+		}
+	}
+
+	/**
+	 * Reports the number of {@link FigureRelation}s of a {@link Diagram} to a {@link Request}
+	 * while it is being solved, at most once every {@link #PROGRESS_INTERVAL_MILLIS}.
+	 */
+	private class ProgressReporter implements DiagramListener {
+		private final Request request;
+		private final Diagram diagram;
+		private long lastReport;
+
+		public ProgressReporter(Request request, Diagram diagram) {
+			this.request = request;
+			this.diagram = diagram;
+			lastReport = System.currentTimeMillis();
+		}
+
+		@Override
+		public void figureWasAdded(Figure fig) {
+		}
+
+		@Override
+		public void figureRelationWasAdded(FigureRelation rel) {
+			final long now = System.currentTimeMillis();
+			if (now - lastReport < PROGRESS_INTERVAL_MILLIS)
+				return;
+			lastReport = now;
+			final int relCount = diagram.getFigureRelations().size();
+			callbackExecutor.execute(() -> request.onProgress(relCount));
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+
+		public DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name);
+			// Don't keep the application running
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * A request to solve the proof of a {@link Diagram}, or of a {@link Problem} (whose
+	 * diagram is then generated on the worker thread). The callbacks are called through the
+	 * callback executor of the {@link ProofSolveRequestManager}.
+	 */
 	public static abstract class Request {
 		private Diagram diagram;
-		
+		private Problem problem;
+		private Object source;
+		private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
 		public Request(Diagram diagram) {
-			this.diagram = diagram;
+			this(diagram, null);
+		}
+
+		/**
+		 * @param diagram the diagram
+		 * @param source what the diagram was created from (for example, the canvas). A newer
+		 * request with the same source supersedes this one while it is waiting. If null, this
+		 * request is never superseded.
+		 */
+		public Request(Diagram diagram, Object source) {
+			this.diagram = Objects.requireNonNull(diagram);
+			this.source = source;
+		}
+
+		/**
+		 * @param problem the problem. If its diagram cannot be generated (for example, if a
+		 * statement is not legal), the request fails (see
+		 * {@link Request#onRequestFailed(Throwable)}).
+		 * @param source what the problem was created from (see
+		 * {@link Request#Request(Diagram, Object)})
+		 */
+		public Request(Problem problem, Object source) {
+			this.problem = Objects.requireNonNull(problem);
+			this.source = source;
 		}
-		
+
+		/**
+		 * @return the diagram, or null if the request was made for a {@link Problem}
+		 */
 		public Diagram getDiagram() {
 			return diagram;
 		}
-		
+
+		/**
+		 * @return the problem, or null if the request was made for a {@link Diagram}
+		 */
+		public Problem getProblem() {
+			return problem;
+		}
+
 		public Diagram setDiagram(Diagram newDiagram) {
 			Diagram old = diagram;
 			diagram = newDiagram;
 			return old;
 		}
-		
+
+		public Object getSource() {
+			return source;
+		}
+
+		public long getTimeoutMillis() {
+			return timeoutMillis;
+		}
+
+		/**
+		 * Set how long the proof may take to be solved before it is cancelled.
+		 * @param timeoutMillis the time limit in milliseconds, or 0 for no limit
+		 * @throws IllegalArgumentException if the time limit is negative
+		 */
+		public void setTimeoutMillis(long timeoutMillis) {
+			if (timeoutMillis < 0)
+				throw new IllegalArgumentException("Timeout must not be negative");
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		/**
+		 * Called on the worker thread right before the proof is solved, to configure the
+		 * solver (for example, its budgets).
+		 */
+		public void configureSolver(ProofSolver solver) {
+		}
+
+		/**
+		 * Called when the proof was solved (whether or not the goal could be reached, see
+		 * {@link ProofSolver#getOutcome()}).
+		 */
 		public abstract void onRequestCompleted(ProofSolver solver);
+
+		/**
+		 * Called periodically while the proof is being solved.
+		 * @param relationCount the number of {@link FigureRelation}s known so far
+		 */
+		public void onProgress(int relationCount) {
+		}
+
+		/**
+		 * Called when the request was cancelled, or superseded by a newer request.
+		 */
+		public void onRequestCancelled() {
+		}
+
+		/**
+		 * Called when the proof took longer than the timeout to be solved.
+		 */
+		public void onRequestTimedOut() {
+		}
+
+		/**
+		 * Called when the proof could not be solved because of an exception or an error (for
+		 * example, an {@link OutOfMemoryError}).
+		 */
+		public void onRequestFailed(Throwable e) {
+		}
 	}
 }
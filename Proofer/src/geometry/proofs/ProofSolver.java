@@ -1,23 +1,172 @@
 package geometry.proofs;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Deque;
-import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import geometry.shapes.Angle;
 import geometry.shapes.Segment;
 import geometry.shapes.Triangle;
 import geometry.shapes.Vertex;
 
+import static geometry.proofs.FigureRelationType.BISECTS;
 import static geometry.proofs.FigureRelationType.CONGRUENT;
 import static geometry.proofs.FigureRelationType.MIDPOINT;
 import static geometry.proofs.FigureRelationType.SIMILAR;
 import static geometry.proofs.FigureRelationType.RIGHT;
 import static geometry.proofs.FigureRelationType.ISOSCELES;
+import static geometry.proofs.FigureRelationType.PERPENDICULAR;
 
 
 public class ProofSolver {
+	
+	/**
+	 * How the given is inflated.
+	 * <ul>
+	 * <li>{@link Evaluation#NAIVE}: every round, every rule is applied to every
+	 * {@link FigureRelation} and every pair of triangles.</li>
+	 * <li>{@link Evaluation#SEMI_NAIVE}: every rule is only applied to the
+	 * {@link FigureRelation}s that were added since it last ran, and to the triangles
+	 * (and angles) that are involved in them. Everything else was already handled when
+	 * the rule last ran.</li>
+	 * </ul>
+	 * Both yield the same {@link FigureRelation}s.
+	 */
+	public static enum Evaluation {
+		NAIVE, SEMI_NAIVE
+	}
+	
+	/**
+	 * How the proof is solved.
+	 * <ul>
+	 * <li>{@link Strategy#FORWARD}: the given is inflated by applying every rule until
+	 * the proof goal is reached, or until no more {@link FigureRelation}s can be added
+	 * (see {@link Evaluation}).</li>
+	 * <li>{@link Strategy#BACKWARD}: starting from the proof goal, only the
+	 * {@link FigureRelation}s that could lead to the goal are proven (see
+	 * {@link BackwardChainer}). Only the rules that derive relations from a single
+	 * relation (the {@link RelationRule}s) are applied to every relation.</li>
+	 * </ul>
+	 */
+	public static enum Strategy {
+		FORWARD, BACKWARD
+	}
+	
+	/**
+	 * The outcome of solving a proof.
+	 * <ul>
+	 * <li>{@link Outcome#PROVEN}: the proof goal was reached.</li>
+	 * <li>{@link Outcome#NOT_PROVEN}: every {@link FigureRelation} that could lead to the
+	 * proof goal was derived, and the goal was not reached.</li>
+	 * <li>{@link Outcome#INCONCLUSIVE}: solving stopped because a {@link Budget} was
+	 * exhausted before the proof goal was reached. The goal may or may not be provable.</li>
+	 * </ul>
+	 */
+	public static enum Outcome {
+		PROVEN, NOT_PROVEN, INCONCLUSIVE
+	}
+	
+	/**
+	 * The limits on solving a proof (see {@link ProofSolver#setMaxRounds(int)},
+	 * {@link ProofSolver#setMaxRelations(int)}, {@link ProofSolver#setTimeLimit(long)} and
+	 * {@link ProofSolver#setMaxHeapBytes(long)}).
+	 */
+	public static enum Budget {
+		ROUNDS, RELATIONS, TIME, MEMORY
+	}
+	
+	/*
+	 * Names of the built-in rules (see getRule(String)), in the order they are applied
+	 */
+	public static final String PERPENDICULAR_SEGMENTS_RIGHT_ANGLES = 
+			"Perpendicular segments form right angles";
+	public static final String BISECTORS = "Bisectors";
+	public static final String SIMILAR_TRIANGLES_CORR_ANGLES = 
+			"Corresponding angles of similar triangles";
+	public static final String MIDPOINTS = "Midpoints";
+	public static final String CONGRUENT_TRIANGLES = "Congruent triangles";
+	public static final String ISOSCELES_TRIANGLES = "Isosceles triangles";
+	public static final String SIMILAR_TRIANGLES = "Similar triangles";
+	public static final String RIGHT_ANGLES_PERPENDICULAR_SEGMENTS = 
+			"Right angles form perpendicular segments";
+	
+	private Strategy strategy = Strategy.FORWARD;
+	private Evaluation evaluation = Evaluation.SEMI_NAIVE;
+	/**
+	 * Number of {@link FigureRelation}s that were already passed to the handlers
+	 * (used by {@link Strategy#BACKWARD})
+	 */
+	private int handledRelCount;
+	/**
+	 * The rules that are applied to inflate the given, in order
+	 */
+	private List<Rule> rules = createBuiltInRules();
+	/**
+	 * Whether to keep inflating the given after the proof goal was reached
+	 */
+	private boolean fullSaturation = false;
+	/**
+	 * Whether the traceback uses the shallowest justification of each statement
+	 */
+	private boolean shallowTraceback = false;
+	/**
+	 * Whether to print the traceback and the inflated given to {@link System#out}
+	 */
+	private boolean verbose = true;
+	/**
+	 * Number of threads that apply the triangle rules (1 means that they are applied
+	 * sequentially)
+	 */
+	private int parallelism = 1;
+	/**
+	 * Pool that applies the triangle rules while the given is inflated (null if they are
+	 * applied sequentially)
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * The triangles of the {@link Diagram}, in order, and for each figure ID, the indices
+	 * of the triangles that contain the figure as a side or an angle (used to find the
+	 * pairs of triangles with congruent parts)
+	 */
+	private List<Triangle> triangles;
+	private int[][] trianglesByPart;
+	/**
+	 * Whether the proof goal was reached while inflating the given
+	 */
+	private boolean goalReached;
+	/**
+	 * Whether solving was cancelled (see {@link ProofSolver#cancel()})
+	 */
+	private volatile boolean cancelled = false;
+	/*
+	 * Budgets (0 means unlimited)
+	 */
+	private int maxRounds = 0;
+	private int maxRelations = 0;
+	private long timeLimitMillis = 0;
+	private long maxHeapBytes = 0;
+	/**
+	 * The number of rounds that were started, and when solving started (see
+	 * {@link Statistics})
+	 */
+	private int rounds;
+	private long startNanos;
+	private Outcome outcome;
+	private Statistics statistics;
 	private boolean proofWasSolved = false;
 	private boolean result = false;
 	private FigureRelation[] traceback;
@@ -41,6 +190,207 @@ public class ProofSolver {
 		return diagram;
 	}
 	
+	public Strategy getStrategy() {
+		return strategy;
+	}
+	
+	public void setStrategy(Strategy strategy) {
+		this.strategy = Objects.requireNonNull(strategy);
+	}
+	
+	public Evaluation getEvaluation() {
+		return evaluation;
+	}
+	
+	public void setEvaluation(Evaluation evaluation) {
+		this.evaluation = Objects.requireNonNull(evaluation);
+	}
+	
+	public boolean isFullSaturation() {
+		return fullSaturation;
+	}
+	
+	/**
+	 * Set whether the given should be fully inflated (until no more {@link FigureRelation}s
+	 * can be derived), even if the proof goal is reached earlier. By default, inflation
+	 * stops as soon as the proof goal is reached. This has no effect on
+	 * {@link Strategy#BACKWARD}.
+	 */
+	public void setFullSaturation(boolean fullSaturation) {
+		this.fullSaturation = fullSaturation;
+	}
+	
+	/**
+	 * Get the rules that are applied to inflate the given, in the order they are applied.
+	 * @return an unmodifiable list of the rules
+	 */
+	public List<Rule> getRules() {
+		return Collections.unmodifiableList(rules);
+	}
+	
+	/**
+	 * Get the rule with the given name (the names of the built-in rules are constants of
+	 * this class, such as {@link ProofSolver#SIMILAR_TRIANGLES}).
+	 * @return the rule, or null if there is no such rule
+	 */
+	public Rule getRule(String name) {
+		for (Rule rule : rules) {
+			if (rule.getName().equals(name))
+				return rule;
+		}
+		return null;
+	}
+	
+	/**
+	 * Add a rule, to be applied after the other rules.
+	 * @param rule the rule
+	 */
+	public void addRule(Rule rule) {
+		Objects.requireNonNull(rule);
+		if (rules.contains(rule)) {
+			throw new IllegalArgumentException("Rule " + rule.getName() + " was already added");
+		}
+		rules.add(rule);
+	}
+	
+	/**
+	 * Remove a rule, so that it is no longer applied (built-in rules can be removed too,
+	 * see {@link ProofSolver#getRule(String)}).
+	 * @param rule the rule
+	 * @return false if the rule was not applied anyway, true otherwise
+	 */
+	public boolean removeRule(Rule rule) {
+		return rules.remove(rule);
+	}
+	
+	public boolean isShallowTraceback() {
+		return shallowTraceback;
+	}
+	
+	/**
+	 * Set whether the traceback should use the shallowest justification of each statement
+	 * (see {@link Traceback#getShallowestTraceback(FigureRelation)}) rather than the first
+	 * one that is found. By default, the first one is used.
+	 */
+	public void setShallowTraceback(boolean shallowTraceback) {
+		this.shallowTraceback = shallowTraceback;
+	}
+	
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	/**
+	 * Set the number of threads that apply the triangle rules (congruent, isosceles and
+	 * similar triangles) to the triangles of the {@link Diagram}. Each round, the rules
+	 * are applied to every triangle (or pair of triangles) in parallel, against the 
+	 * {@link Diagram} as it was at the start of the round. The new {@link FigureRelation}s
+	 * are then added in the same order as if the rules had been applied sequentially, so
+	 * the result and the traceback do not depend on the parallelism. By default, the
+	 * rules are applied sequentially (a parallelism of 1).
+	 * @param parallelism the number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+	
+	public boolean isVerbose() {
+		return verbose;
+	}
+	
+	/**
+	 * Set whether to print the inflated given and the traceback to {@link System#out} while
+	 * solving (true by default).
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	public int getMaxRounds() {
+		return maxRounds;
+	}
+	
+	/**
+	 * Set the maximum number of rounds. In each round of {@link Strategy#FORWARD}, every rule
+	 * whose triggers changed is applied. In each round of {@link Strategy#BACKWARD}, the proof
+	 * goal is tried again with the relations known so far.
+	 * @param maxRounds the maximum number of rounds, or 0 for no limit
+	 */
+	public void setMaxRounds(int maxRounds) {
+		if (maxRounds < 0)
+			throw new IllegalArgumentException("Max rounds must not be negative");
+		this.maxRounds = maxRounds;
+	}
+	
+	public int getMaxRelations() {
+		return maxRelations;
+	}
+	
+	/**
+	 * Set the maximum number of {@link FigureRelation}s in the {@link Diagram}.
+	 * @param maxRelations the maximum number of relations, or 0 for no limit
+	 */
+	public void setMaxRelations(int maxRelations) {
+		if (maxRelations < 0)
+			throw new IllegalArgumentException("Max relations must not be negative");
+		this.maxRelations = maxRelations;
+	}
+	
+	public long getTimeLimit() {
+		return timeLimitMillis;
+	}
+	
+	/**
+	 * Set how long solving may take.
+	 * @param timeLimitMillis the time limit in milliseconds, or 0 for no limit
+	 */
+	public void setTimeLimit(long timeLimitMillis) {
+		if (timeLimitMillis < 0)
+			throw new IllegalArgumentException("Time limit must not be negative");
+		this.timeLimitMillis = timeLimitMillis;
+	}
+	
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+	
+	/**
+	 * Set the maximum size of the live heap while solving. The live heap is measured after
+	 * garbage collection (it includes everything else that the JVM holds, but not the
+	 * garbage that was not collected yet).
+	 * @param maxHeapBytes the maximum size in bytes, or 0 for no limit
+	 */
+	public void setMaxHeapBytes(long maxHeapBytes) {
+		if (maxHeapBytes < 0)
+			throw new IllegalArgumentException("Max heap bytes must not be negative");
+		this.maxHeapBytes = maxHeapBytes;
+	}
+	
+	/**
+	 * Get the outcome of solving the proof.
+	 * @throws RuntimeException if the proof was not solved yet
+	 */
+	public Outcome getOutcome() {
+		if (!proofWasSolved) {
+			throw new RuntimeException("Proof was not yet solved");
+		}
+		return outcome;
+	}
+	
+	/**
+	 * Get the statistics of solving the proof.
+	 * @throws RuntimeException if the proof was not solved yet
+	 */
+	public Statistics getStatistics() {
+		if (!proofWasSolved) {
+			throw new RuntimeException("Proof was not yet solved");
+		}
+		return statistics;
+	}
+	
 	public boolean getResult() {
 		if (!proofWasSolved) {
 			throw new RuntimeException("Proof was not yet solved");
@@ -56,6 +406,101 @@ public class ProofSolver {
 		return proofWasSolved;
 	}
 	
+	/**
+	 * Cancel solving the proof. This can be called from any thread: {@link ProofSolver#solve()}
+	 * stops soon after, and throws a {@link CancellationException}.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Stop solving the proof if it was cancelled, or if a {@link Budget} (other than the
+	 * rounds, see {@link ProofSolver#startRound()}) was exhausted.
+	 * @throws CancellationException if the proof was cancelled
+	 * @throws BudgetExhaustedException if a budget was exhausted
+	 */
+	void checkLimits() {
+		if (cancelled)
+			throw new CancellationException("Proof solving was cancelled");
+		if (maxRelations > 0 && diagram.getFigureRelations().size() > maxRelations)
+			throw new BudgetExhaustedException(Budget.RELATIONS);
+		if (timeLimitMillis > 0 
+				&& System.nanoTime() - startNanos > timeLimitMillis * 1000000L)
+			throw new BudgetExhaustedException(Budget.TIME);
+		if (maxHeapBytes > 0 && getLiveHeapBytes() > maxHeapBytes)
+			throw new BudgetExhaustedException(Budget.MEMORY);
+	}
+	
+	/**
+	 * Get the size of the live objects on the heap. The current usage of the heap is only a
+	 * cheap upper bound: it also counts the garbage of the young generation (the pools that
+	 * every collection empties), which is left out once the upper bound goes over the limit.
+	 * Every other pool is counted at its current usage, since its last collection may be out
+	 * of date.
+	 */
+	private long getLiveHeapBytes() {
+		final Runtime runtime = Runtime.getRuntime();
+		final long used = runtime.totalMemory() - runtime.freeMemory();
+		if (used <= maxHeapBytes)
+			return used;
+		// The collectors that ran at least once
+		Set<String> collectors = new HashSet<>();
+		for (GarbageCollectorMXBean collector 
+				: ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector.getCollectionCount() > 0)
+				collectors.add(collector.getName());
+		}
+		long live = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP)
+				continue;
+			if (isEmptiedByCollections(pool, collectors))
+				continue;
+			live += pool.getUsage().getUsed();
+		}
+		return live;
+	}
+	
+	/**
+	 * Get whether the given heap pool was collected, and held nothing right after its last
+	 * collection (like the eden space of generational collectors).
+	 * @param collectors the names of the collectors that ran at least once
+	 */
+	private static boolean isEmptiedByCollections(MemoryPoolMXBean pool, 
+			Set<String> collectors) {
+		final MemoryUsage usage = pool.getCollectionUsage();
+		if (usage == null || usage.getUsed() > 0)
+			return false;
+		for (String name : pool.getMemoryManagerNames()) {
+			if (collectors.contains(name))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Start a new round (see {@link ProofSolver#setMaxRounds(int)}).
+	 * @throws BudgetExhaustedException if the maximum number of rounds was reached
+	 */
+	private void startRound() {
+		if (maxRounds > 0 && rounds >= maxRounds)
+			throw new BudgetExhaustedException(Budget.ROUNDS);
+		rounds++;
+	}
+	
+	/**
+	 * Solve the proof. If a {@link Budget} is exhausted, solving stops, and the outcome is
+	 * {@link Outcome#INCONCLUSIVE} (unless the proof goal was already reached), with the
+	 * {@link FigureRelation}s derived so far kept in the {@link Diagram}.
+	 * @return whether the proof goal could be reached
+	 * @throws CancellationException if solving was cancelled (see
+	 * {@link ProofSolver#cancel()})
+	 */
 	public boolean solve() {
 		if (proofWasSolved)
 			return result;
@@ -66,87 +511,446 @@ public class ProofSolver {
 		if (diagram.getProofGoal() == null)
 			throw new NullPointerException("Proof goal is null.");
 		
+		rounds = 0;
+		startNanos = System.nanoTime();
+		Budget exhausted = null;
 		// Solve proof here
 		// Inflate the given, get all available FigureRelations
-		inflateGiven();
+		try {
+			checkLimits();
+			inflateGiven();
+		} catch (BudgetExhaustedException e) {
+			exhausted = e.getBudget();
+		}
+		statistics = new Statistics(rounds, diagram.getFigureRelations().size(), 
+				(System.nanoTime() - startNanos) / 1000000L, exhausted);
 		
 		// Check if the proof goal is included in the inflated given
-		for (int i = 0; i < diagram.getFigureRelations().size(); i++) {
-			FigureRelation pair = diagram.getFigureRelations().get(i);
-			if (FigureRelation.safeEquals(pair, diagram.getProofGoal())) {
-				// TRACEBACK PROCESS
-				Deque<FigureRelation> traceback = new ArrayDeque<>();
-				traceback(pair, traceback);
-				// Store traceback
-				this.traceback = traceback.toArray(new FigureRelation[traceback.size()]);
+		FigureRelation goal = diagram.getProofGoal();
+		FigureRelation pair = diagram.getFigureRelation(goal.getRelationType(), 
+				goal.getFigure0(), goal.getFigure1());
+		if (pair != null) {
+			// TRACEBACK PROCESS
+			traceback = shallowTraceback ? Traceback.getShallowestTraceback(pair)
+					: Traceback.getTraceback(pair);
+			if (verbose) {
 				System.out.println("-----TRACEBACK-----");
-				traceback.forEach(System.out::println);
-				return proofWasSolved = result = true;
+				for (FigureRelation rel : traceback) {
+					System.out.println(rel);
+				}
 			}
+			outcome = Outcome.PROVEN;
+			return proofWasSolved = result = true;
 		}
 		
+		outcome = exhausted == null ? Outcome.NOT_PROVEN : Outcome.INCONCLUSIVE;
 		proofWasSolved = true;
 		result = false;
 		
 		return result;
 	}
 	
-	private void traceback(FigureRelation begin, Deque<FigureRelation> traceback) {		
-		traceback.push(begin);
-		for (FigureRelation parent : begin.getParents()) {
-			traceback(parent, traceback);
+	private void inflateGiven() {
+		// Watch for the proof goal, so that we can stop once it is reached
+		final FigureRelation goal = diagram.getProofGoal();
+		goalReached = !fullSaturation && diagram.containsFigureRelation(goal);
+		DiagramListener goalWatcher = new DiagramListener() {
+			@Override
+			public void figureWasAdded(Figure fig) {
+			}
+			
+			@Override
+			public void figureRelationWasAdded(FigureRelation rel) {
+				// Only a relation of the same type can make the goal true
+				if (!goalReached && rel.getRelationType() == goal.getRelationType())
+					goalReached = diagram.containsFigureRelation(goal);
+			}
+		};
+		if (!fullSaturation)
+			diagram.getListeners().add(goalWatcher);
+		try {
+			if (strategy == Strategy.BACKWARD)
+				proveGoalBackward(goal);
+			else
+				inflateGivenUntilGoalReached();
+		} finally {
+			diagram.getListeners().remove(goalWatcher);
+		}
+		
+		if (verbose) {
+			System.out.println("--------Figure Relations---------");
+			diagram.getFigureRelations().forEach(System.out::println);
+		}
+	}
+	
+	/**
+	 * Keep applying the rules until no more {@link FigureRelation}s can be added, or until
+	 * the proof goal is reached (see {@link ProofSolver#setFullSaturation(boolean)}).
+	 */
+	private void inflateGivenUntilGoalReached() {
+		if (parallelism > 1)
+			pool = new ForkJoinPool(parallelism);
+		try {
+			inflateGivenInRounds();
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+				pool = null;
+			}
 		}
 	}
 	
-	private void inflateGiven() {
-		int totalRelsAdded;
+	/**
+	 * Apply the rules in rounds. Each round, only the rules whose triggers changed (relations
+	 * of their trigger types were added since they were last applied) are applied. Stop
+	 * once no rule is triggered anymore.
+	 */
+	private void inflateGivenInRounds() {
+		final boolean semiNaive = evaluation == Evaluation.SEMI_NAIVE;
+		indexTriangleParts();
+		final List<Rule> agenda = new ArrayList<>(rules);
+		// For each rule, the number of figure relations when it was last applied
+		final int[] watermarks = new int[agenda.size()];
+		boolean triggered;
 		
 		do {
-			// Total number of figure relations BEFORE inflating the given
-			final int relCountBefore = diagram.getFigureRelations().size();
-			
-			for (int i = 0; i < relCountBefore; i++) {
-				FigureRelation pair = diagram.getFigureRelations().get(i);
-				
-				switch (pair.getRelationType()) {
-				case PARALLEL:
-					break;
-				case PERPENDICULAR:
-					handlePerpendicularPair(pair);
-					break;
-				case BISECTS:
-					handleBisectPair(pair);
-					break;
-				case SIMILAR:
-					handleSimilarTriangles(pair);
-					break;
-				case COMPLEMENTARY:
-				case SUPPLEMENTARY:
-					break;
-				case MIDPOINT:
-					handleMidpoint(pair);
-				default:
-					break;
+			startRound();
+			triggered = false;
+			for (int i = 0; i < agenda.size(); i++) {
+				checkLimits();
+				if (goalReached)
+					return;
+				Rule rule = agenda.get(i);
+				final int relCount = diagram.getFigureRelations().size();
+				List<FigureRelation> added = 
+						getFigureRelations(rule.getTriggers(), watermarks[i], relCount);
+				// Nothing that the rule depends on has changed since it was last applied
+				if (added.isEmpty())
+					continue;
+				if (!semiNaive)
+					added = getFigureRelations(rule.getTriggers(), 0, relCount);
+				watermarks[i] = relCount;
+				triggered = true;
+				applyRule(rule, added);
+			}
+		
+		// Keep inflating the given while there are still rules to apply
+		} while (triggered && !goalReached);
+	}
+	
+	/**
+	 * Get the {@link FigureRelation}s of the given types, between the given indices of the
+	 * relations of the {@link Diagram}.
+	 */
+	private List<FigureRelation> getFigureRelations(Set<FigureRelationType> types, 
+			int start, int end) {
+		List<FigureRelation> rels = diagram.getFigureRelations();
+		List<FigureRelation> list = new ArrayList<>();
+		for (int i = start; i < end; i++) {
+			if (types.contains(rels.get(i).getRelationType()))
+				list.add(rels.get(i));
+		}
+		return list;
+	}
+	
+	/**
+	 * Apply the given rule to the given relations. A {@link RelationRule} is applied to
+	 * one relation at a time, so that it can stop once the proof goal is reached.
+	 */
+	private void applyRule(Rule rule, List<FigureRelation> added) {
+		if (rule instanceof RelationRule) {
+			for (FigureRelation rel : added) {
+				checkLimits();
+				if (goalReached)
+					return;
+				((RelationRule) rule).apply(diagram, rel);
+			}
+		} else {
+			rule.apply(diagram, added);
+		}
+	}
+	
+	/**
+	 * Prove the given goal with a {@link BackwardChainer}. Subgoals that failed because
+	 * they depended on one of their ancestors may succeed once more relations are known,
+	 * so try again while new relations are being added.
+	 */
+	private void proveGoalBackward(FigureRelation goal) {
+		BackwardChainer chainer = new BackwardChainer(this, diagram);
+		handledRelCount = 0;
+		int relCountBefore;
+		do {
+			startRound();
+			relCountBefore = diagram.getFigureRelations().size();
+			// Apply the handlers to the given first
+			handleNewFigureRelations();
+			if (chainer.prove(goal))
+				return;
+		} while (diagram.getFigureRelations().size() > relCountBefore);
+	}
+	
+	/**
+	 * Apply the {@link RelationRule}s to all of the {@link FigureRelation}s that have not
+	 * been handled yet (including those added by the rules themselves).
+	 */
+	void handleNewFigureRelations() {
+		while (handledRelCount < diagram.getFigureRelations().size()) {
+			checkLimits();
+			FigureRelation rel = diagram.getFigureRelations().get(handledRelCount++);
+			for (Rule rule : rules) {
+				if (rule instanceof RelationRule 
+						&& rule.getTriggers().contains(rel.getRelationType()))
+					((RelationRule) rule).apply(diagram, rel);
+			}
+		}
+	}
+	
+	/**
+	 * Get the {@link Figure}s involved in the given {@link FigureRelation}s of the given
+	 * type. For equivalence relation types, a new relation relates its figures to every
+	 * figure in their class, so the whole class is included.
+	 * @param added the relations that were added since the rule last ran
+	 * @param type the type of relations the rule depends on
+	 * @return the figures
+	 */
+	private Set<Figure> getTouchedFigures(List<FigureRelation> added, 
+			FigureRelationType type) {
+		Set<Figure> touched = new HashSet<>();
+		for (FigureRelation rel : added) {
+			if (rel.getRelationType() != type)
+				continue;
+			if (FigureRelationType.isEquivalenceFigureRelationType(type)) {
+				// If the first figure is already included, so is the rest of its class
+				if (!touched.contains(rel.getFigure0()))
+					touched.addAll(diagram.getEquivalentFigures(type, rel.getFigure0()));
+				continue;
+			}
+			touched.add(rel.getFigure0());
+			if (rel.getFigure1() != null)
+				touched.add(rel.getFigure1());
+		}
+		return touched;
+	}
+	
+	/**
+	 * Get the triangles with a side or an angle that is involved in one of the given 
+	 * congruent {@link FigureRelation}s (the triangle rules only depend on congruent 
+	 * sides and angles).
+	 * @param added the relations that were added since the rule last ran
+	 * @return the triangles
+	 */
+	private Set<Triangle> getTouchedTriangles(List<FigureRelation> added) {
+		Set<Figure> touchedFigs = getTouchedFigures(added, CONGRUENT);
+		Set<Triangle> touched = new HashSet<>();
+		if (touchedFigs.isEmpty())
+			return touched;
+		for (Triangle tri : diagram.getFiguresOfType(Triangle.class)) {
+			if (isTouched(tri, touchedFigs))
+				touched.add(tri);
+		}
+		return touched;
+	}
+	
+	/**
+	 * Get whether a side or an angle of the given triangle is one of the given figures.
+	 */
+	private boolean isTouched(Triangle tri, Set<Figure> touchedFigs) {
+		for (Segment seg : tri.getSides()) {
+			if (touchedFigs.contains(seg))
+				return true;
+		}
+		for (Angle angle : tri.getAngles()) {
+			// Some rules use the angle, others its primary synonym
+			if (touchedFigs.contains(angle) || touchedFigs.contains(
+					diagram.getPrimaryAngleSynonym(angle.getName())))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Index the triangles of the {@link Diagram} by their sides and angles (both the
+	 * angles themselves and their primary synonyms).
+	 */
+	private void indexTriangleParts() {
+		triangles = diagram.getFiguresOfType(Triangle.class);
+		int[] counts = new int[diagram.getFigureIdCount()];
+		trianglesByPart = new int[counts.length][];
+		// Find the IDs of the parts of each triangle
+		int[][] partIds = new int[triangles.size()][];
+		for (int i = 0; i < triangles.size(); i++) {
+			Triangle tri = triangles.get(i);
+			List<Figure> parts = new ArrayList<>();
+			parts.addAll(Arrays.asList(tri.getSides()));
+			for (Angle angle : tri.getAngles()) {
+				parts.add(angle);
+				parts.add(diagram.getPrimaryAngleSynonym(angle.getName()));
+			}
+			partIds[i] = new int[parts.size()];
+			for (int j = 0; j < parts.size(); j++) {
+				// The parts of the triangles were added to the diagram along with them,
+				// so they have IDs
+				final int id = diagram.getFigureId(parts.get(j));
+				// An angle can be its own primary synonym
+				if (id == FigureIds.NO_ID || contains(partIds[i], j, id)) {
+					partIds[i][j] = FigureIds.NO_ID;
+					continue;
 				}
+				partIds[i][j] = id;
+				++counts[id];
 			}
-			
-			// Discover congruent triangles
-			findCongruentTriangles();
-			// Discover isosceles triangles
-			findIsoscelesTriangles();
-			// Discover similar triangles
-			findSimilarTriangles();
-			// Find perpendicular segments
-			findPerpendicularSegments();
-			
-			// Update
-			totalRelsAdded = diagram.getFigureRelations().size() - relCountBefore;
+		}
+		// Index the triangles by the IDs of their parts
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] > 0)
+				trianglesByPart[id] = new int[counts[id]];
+			counts[id] = 0;
+		}
+		for (int i = 0; i < triangles.size(); i++) {
+			for (int id : partIds[i]) {
+				if (id != FigureIds.NO_ID)
+					trianglesByPart[id][counts[id]++] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Get whether the given value is among the first given number of values of the array.
+	 */
+	private static boolean contains(int[] array, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (array[i] == value)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the indices of the triangles that contain the {@link Figure} with the given ID as
+	 * a side or an angle (see {@link ProofSolver#indexTriangleParts()}).
+	 * @return the indices, or null if there are none
+	 */
+	private int[] getTrianglesContaining(int id) {
+		return id >= 0 && id < trianglesByPart.length ? trianglesByPart[id] : null;
+	}
+	
+	/**
+	 * Get the pairs of triangles to be checked by the rules that compare two triangles:
+	 * the pairs with a side or an angle of one triangle that is congruent to a side or
+	 * an angle of the other. These rules need at least one pair of congruent parts, so
+	 * no other pair can be congruent or similar.
+	 * @param touched the parts whose congruences changed--each pair must have a pair of
+	 * congruent parts involving one of them (pairs whose congruent parts did not change
+	 * were already checked). If null, all parts are considered.
+	 * @return the pairs, in the order of the figures of the {@link Diagram}
+	 */
+	private List<Triangle[]> getCandidatePairs(Set<Figure> touched) {
+		// For each triangle, the triangles after it that it pairs up with
+		BitSet[] pairs = new BitSet[triangles.size()];
+		// IDs of the parts that were already visited
+		BitSet visited = new BitSet(trianglesByPart.length);
+		List<Figure> parts = touched == null ? 
+				diagram.getFigures() : new ArrayList<>(touched);
+		for (Figure part : parts) {
+			final int partId = diagram.getFigureId(part);
+			if (partId == FigureIds.NO_ID || visited.get(partId))
+				continue;
+			// Every part of the class is congruent to every other, so the triangles with
+			// a touched part pair up with all of the triangles with a part in the class
+			BitSet touchedTris = new BitSet(triangles.size());
+			BitSet congTris = new BitSet(triangles.size());
+			for (Figure congPart : diagram.getEquivalentFigures(CONGRUENT, part)) {
+				final int id = diagram.getFigureId(congPart);
+				visited.set(id);
+				int[] partTris = getTrianglesContaining(id);
+				if (partTris == null)
+					continue;
+				final boolean isTouched = touched == null || touched.contains(congPart);
+				for (int tri : partTris) {
+					congTris.set(tri);
+					if (isTouched)
+						touchedTris.set(tri);
+				}
+			}
+			for (int i = touchedTris.nextSetBit(0); i >= 0; i = touchedTris.nextSetBit(i + 1)) {
+				for (int j = congTris.nextSetBit(0); j >= 0; j = congTris.nextSetBit(j + 1)) {
+					if (i == j)
+						continue;
+					final int first = Math.min(i, j);
+					if (pairs[first] == null)
+						pairs[first] = new BitSet(triangles.size());
+					pairs[first].set(Math.max(i, j));
+				}
+			}
+		}
+		
+		List<Triangle[]> list = new ArrayList<>();
+		for (int i = 0; i < pairs.length; i++) {
+			if (pairs[i] == null)
+				continue;
+			for (int j = pairs[i].nextSetBit(0); j >= 0; j = pairs[i].nextSetBit(j + 1)) {
+				list.add(new Triangle[] { triangles.get(i), triangles.get(j) });
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Apply the given rule to each of the given triangles (or pairs of triangles), in
+	 * order, and add the {@link FigureRelation}s it derives to the {@link Diagram}.
+	 * Stop if the proof goal is reached.
+	 * <p>
+	 * If there is a pool, the rule is first applied to all of the triangles in parallel.
+	 * Nothing is added to the {@link Diagram} while this happens, so the rule only reads
+	 * a frozen view of it. Then, in order, the rule is applied again (and its relations
+	 * added) only where it derived new relations from the frozen view, or where it
+	 * depends on a congruence that was added since. Anywhere else, it would derive
+	 * nothing new, so the {@link FigureRelation}s are the same as when applying the rule
+	 * sequentially.
+	 */
+	private void applyTriangleRule(List<Triangle[]> units, TriangleRule rule) {
+		final RelationSink addToDiagram = diagram::addFigureRelation;
+		if (pool == null) {
+			for (Triangle[] tris : units) {
+				checkLimits();
+				if (goalReached)
+					return;
+				rule.apply(tris, addToDiagram);
+			}
+			return;
+		}
 		
-		// Keep inflating the given while there are still figure relations to add
-		} while (totalRelsAdded > 0);
+		// Find out where the rule derives new relations
+		final boolean[] derivesNew = new boolean[units.size()];
+		pool.invoke(new TriangleRuleTask(rule, units, derivesNew, 0, units.size()));
 		
-		System.out.println("--------Figure Relations---------");
-		diagram.getFigureRelations().forEach(System.out::println);
+		// Keep track of the figures whose congruences changed since
+		final Set<Figure> changed = new HashSet<>();
+		DiagramListener changeWatcher = new DiagramListener() {
+			@Override
+			public void figureWasAdded(Figure fig) {
+			}
+			
+			@Override
+			public void figureRelationWasAdded(FigureRelation rel) {
+				if (rel.getRelationType() == CONGRUENT)
+					changed.addAll(diagram.getEquivalentFigures(CONGRUENT, rel.getFigure0()));
+			}
+		};
+		diagram.getListeners().add(changeWatcher);
+		try {
+			for (int i = 0; i < units.size(); i++) {
+				checkLimits();
+				if (goalReached)
+					return;
+				Triangle[] tris = units.get(i);
+				if (derivesNew[i] || isTouched(tris[0], changed)
+						|| (tris.length > 1 && isTouched(tris[1], changed)))
+					rule.apply(tris, addToDiagram);
+			}
+		} finally {
+			diagram.getListeners().remove(changeWatcher);
+		}
 	}
 	
 	/**
@@ -325,195 +1129,195 @@ public class ProofSolver {
 		}
 	}
 	
-	private void findSimilarTriangles() {
-		// For each figure
-		for (int i = 0; i < diagram.getFigures().size()-1; i++) {
-			// Make sure figure is a triangle
-			if (diagram.getFigures().get(i).getClass() != Triangle.class)
-				continue;
-			// For each other figure
-			for (int j = i + 1; j < diagram.getFigures().size(); j++) {
-				// The second figure must be a triangle
-				if (diagram.getFigures().get(j).getClass() != Triangle.class)
-					continue;
-				
-				// Get the triangles
-				Triangle tri0 = (Triangle) diagram.getFigures().get(i);
-				Triangle tri1 = (Triangle) diagram.getFigures().get(j);
-				
-				// List of parents
-				List<FigureRelation> parents = new ArrayList<>();
-				
-				// Must find at least two congruent pairs of angles
-				for (Angle a : tri0.getAngles()) {
-					for (Angle b : tri1.getAngles()) {
-						FigureRelation query = diagram.getFigureRelation(CONGRUENT, a, b);
-						if (query != null) {
-							parents.add(query);
-						}
-					}
-				}
-				
-				// Make the two triangles similar
-				if (parents.size() >= 2) {
-					FigureRelation rel = new FigureRelation(SIMILAR, tri0, tri1);
-					rel.addParents(parents);
-					rel.setReason(ProofReasons.SIMILAR);
-					diagram.addFigureRelation(rel);
+	/**
+	 * @param touched the sides and angles whose congruences changed--each pair that is
+	 * checked must have a pair of congruent parts involving one of them. If null, all 
+	 * pairs with a pair of congruent parts are checked.
+	 */
+	private void findSimilarTriangles(Set<Figure> touched) {
+		applyTriangleRule(getCandidatePairs(touched), this::checkSimilarTriangles);
+	}
+	
+	private void checkSimilarTriangles(Triangle[] tris, RelationSink sink) {
+		Triangle tri0 = tris[0];
+		Triangle tri1 = tris[1];
+		
+		// List of parents
+		List<FigureRelation> parents = new ArrayList<>();
+		
+		// Must find at least two congruent pairs of angles
+		for (Angle a : tri0.getAngles()) {
+			for (Angle b : tri1.getAngles()) {
+				FigureRelation query = diagram.getFigureRelation(CONGRUENT, a, b);
+				if (query != null) {
+					parents.add(query);
 				}
 			}
 		}
+		
+		// Make the two triangles similar
+		if (parents.size() >= 2) {
+			FigureRelation rel = new FigureRelation(SIMILAR, tri0, tri1);
+			rel.addParents(parents);
+			rel.setReason(ProofReasons.SIMILAR);
+			sink.add(rel);
+		}
 	}
 	
-	private void findIsoscelesTriangles() {
+	/**
+	 * @param touched the triangles to be checked. If null, all triangles are checked.
+	 */
+	private void findIsoscelesTriangles(Set<Triangle> touched) {
+		List<Triangle[]> tris = new ArrayList<>();
 		for (Triangle tri : diagram.getFiguresOfType(Triangle.class)) {
-			// Get the name of the triangle
-			String triName = tri.getName();
-			// Get the triangle's segments
-			Segment[] segs = tri.getSides();
-			// Get the triangle's angles
-			Angle[] angles = tri.getAngles();
-			
-			// Account for angle synonyms
-			for (int i = 0; i < angles.length; i++) {
-				angles[i] = diagram.getPrimaryAngleSynonym(angles[i].getName());
-			}
-						
-			// For each segment
-			for (int i = 0; i < 2; i++) {
-				// For each segment located AFTER the above segment in the list of segments
-				// (this prevents us from comparing a pair of segments twice. We don't
-				// want to compare A to B and then B to A)
-				for (int j = i + 1; j < 3; j++) {					
-					// Find congruent segments, make opposite angles congruent
-					FigureRelation segsRel = diagram
-							.getFigureRelation(CONGRUENT, segs[i], segs[j]);
-					if (segsRel != null) {
-						// Get the opposite vertex from the FIRST segment
-						String oppVert0 = ProofUtils.getOppositeVertex(triName, segs[i].getName());
-						// Get the opposite vertex from the CURRENT segment
-						String oppVert1 = ProofUtils.getOppositeVertex(triName, segs[j].getName());
-						// GET THE ANGLES OPPOSITE OF THE CONGRUENT SEGMENTS
-						// Get the angles at each of the vertices
-						Angle a0 = tri.getAngle(ProofUtils.getFullNameOfAngle(triName, oppVert0));
-						Angle a1 = tri.getAngle(ProofUtils.getFullNameOfAngle(triName, oppVert1));
-						
-						/*
-						 * MAKE THE TRIANGLE ISOSCELES
-						 */
-						FigureRelation isoscelesRel = new FigureRelation(ISOSCELES, tri, null);
-						isoscelesRel.setReason(ProofReasons.ISOSCELES);
-						isoscelesRel.addParent(segsRel);
-						diagram.addFigureRelation(isoscelesRel);
+			if (touched == null || touched.contains(tri))
+				tris.add(new Triangle[] { tri });
+		}
+		applyTriangleRule(tris, this::checkIsoscelesTriangle);
+	}
+	
+	private void checkIsoscelesTriangle(Triangle[] tris, RelationSink sink) {
+		Triangle tri = tris[0];
+		// Get the name of the triangle
+		String triName = tri.getName();
+		// Get the triangle's segments
+		Segment[] segs = tri.getSides();
+		// Get the triangle's angles
+		Angle[] angles = tri.getAngles();
+		
+		// Account for angle synonyms
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = diagram.getPrimaryAngleSynonym(angles[i].getName());
+		}
+					
+		// For each segment
+		for (int i = 0; i < 2; i++) {
+			// For each segment located AFTER the above segment in the list of segments
+			// (this prevents us from comparing a pair of segments twice. We don't
+			// want to compare A to B and then B to A)
+			for (int j = i + 1; j < 3; j++) {					
+				// Find congruent segments, make opposite angles congruent
+				FigureRelation segsRel = diagram
+						.getFigureRelation(CONGRUENT, segs[i], segs[j]);
+				if (segsRel != null) {
+					// Get the opposite vertex from the FIRST segment
+					String oppVert0 = ProofUtils.getOppositeVertex(triName, segs[i].getName());
+					// Get the opposite vertex from the CURRENT segment
+					String oppVert1 = ProofUtils.getOppositeVertex(triName, segs[j].getName());
+					// GET THE ANGLES OPPOSITE OF THE CONGRUENT SEGMENTS
+					// Get the angles at each of the vertices
+					Angle a0 = tri.getAngle(ProofUtils.getFullNameOfAngle(triName, oppVert0));
+					Angle a1 = tri.getAngle(ProofUtils.getFullNameOfAngle(triName, oppVert1));
+					
+					/*
+					 * MAKE THE TRIANGLE ISOSCELES
+					 */
+					FigureRelation isoscelesRel = new FigureRelation(ISOSCELES, tri, null);
+					isoscelesRel.setReason(ProofReasons.ISOSCELES);
+					isoscelesRel.addParent(segsRel);
+					sink.add(isoscelesRel);
 
-						/*
-						 * MAKE THE TWO BASE ANGLES CONGRUENT (ISOSCELES TRIANGLE THEOREM)
-						 */
-						// Make the two angles congruent
-						FigureRelation rel = new FigureRelation(
-								CONGRUENT, 
-								diagram.getPrimaryAngleSynonym(a0.getName()), 
-								diagram.getPrimaryAngleSynonym(a1.getName())
-						);
-						rel.addParent(isoscelesRel);
-						rel.setReason(ProofReasons.ISOSCELES_OPP_ANGLES);
-						// Update Diagram
-						diagram.addFigureRelation(rel);
-					}
+					/*
+					 * MAKE THE TWO BASE ANGLES CONGRUENT (ISOSCELES TRIANGLE THEOREM)
+					 */
+					// Make the two angles congruent
+					FigureRelation rel = new FigureRelation(
+							CONGRUENT, 
+							diagram.getPrimaryAngleSynonym(a0.getName()), 
+							diagram.getPrimaryAngleSynonym(a1.getName())
+					);
+					rel.addParent(isoscelesRel);
+					rel.setReason(ProofReasons.ISOSCELES_OPP_ANGLES);
+					// Update Diagram
+					sink.add(rel);
+				}
 
-					// Find congruent angles, make opposite segments congruent
-					FigureRelation anglesRel = diagram
-							.getFigureRelation(CONGRUENT, angles[i], angles[j]);
-					if (anglesRel != null) {
-						// Get the middle vertex of the first angle
-						String midVertex0 = angles[i].getNameShort();
-						// Get the middle vertex of the second segment
-						String midVertex1 = angles[j].getNameShort();
-						// Get the segment in between of the two angles
-						String middleSegment = midVertex0 + midVertex1;
-						// Get the vertex opposite to the middle segment
-						String oppVertex = ProofUtils.getOppositeVertex(triName, middleSegment);
-						// Make the first segment
-						String seg0 = oppVertex + midVertex0;
-						// Make the second segment
-						String seg1 = oppVertex + midVertex1;
-						Segment segment0 = diagram.getFigure(seg0);
-						Segment segment1 = diagram.getFigure(seg1);
-						
-						/*
-						 * MAKE THE TRIANGLE ISOSCELES
-						 */
-						FigureRelation isoscelesRel = new FigureRelation(ISOSCELES, tri, null);
-						isoscelesRel.setReason(ProofReasons.OPP_ISOSCELES);
-						isoscelesRel.addParent(anglesRel);
-						diagram.addFigureRelation(isoscelesRel);
+				// Find congruent angles, make opposite segments congruent
+				FigureRelation anglesRel = diagram
+						.getFigureRelation(CONGRUENT, angles[i], angles[j]);
+				if (anglesRel != null) {
+					// Get the middle vertex of the first angle
+					String midVertex0 = angles[i].getNameShort();
+					// Get the middle vertex of the second segment
+					String midVertex1 = angles[j].getNameShort();
+					// Get the segment in between of the two angles
+					String middleSegment = midVertex0 + midVertex1;
+					// Get the vertex opposite to the middle segment
+					String oppVertex = ProofUtils.getOppositeVertex(triName, middleSegment);
+					// Make the first segment
+					String seg0 = oppVertex + midVertex0;
+					// Make the second segment
+					String seg1 = oppVertex + midVertex1;
+					Segment segment0 = diagram.getFigure(seg0);
+					Segment segment1 = diagram.getFigure(seg1);
+					
+					/*
+					 * MAKE THE TRIANGLE ISOSCELES
+					 */
+					FigureRelation isoscelesRel = new FigureRelation(ISOSCELES, tri, null);
+					isoscelesRel.setReason(ProofReasons.OPP_ISOSCELES);
+					isoscelesRel.addParent(anglesRel);
+					sink.add(isoscelesRel);
 
-						/*
-						 * MAKE THE TWO OPPOSITE SEGMENTS CONGRUENT (ISOSCELES TRIANGLE THEOREM)
-						 */
-						// Make the segs congruent
-						FigureRelation rel = new FigureRelation(CONGRUENT, segment0, segment1);
-						rel.addParent(isoscelesRel);
-						rel.setReason(ProofReasons.ISOSCELES_OPP_SEGMENTS);
-						diagram.addFigureRelation(rel);
-					}
+					/*
+					 * MAKE THE TWO OPPOSITE SEGMENTS CONGRUENT (ISOSCELES TRIANGLE THEOREM)
+					 */
+					// Make the segs congruent
+					FigureRelation rel = new FigureRelation(CONGRUENT, segment0, segment1);
+					rel.addParent(isoscelesRel);
+					rel.setReason(ProofReasons.ISOSCELES_OPP_SEGMENTS);
+					sink.add(rel);
 				}
-			}			
+			}
 		}
 	}
 	
-	private void findCongruentTriangles() {
-		// For each figure
-		for (int i = 0; i < diagram.getFigures().size()-1; i++) {
-			// Make sure figure is a triangle
-			if (diagram.getFigures().get(i).getClass() != Triangle.class)
-				continue;
-			// For each other figure
-			for (int j = i + 1; j < diagram.getFigures().size(); j++) {
-				// The second figure must be a triangle
-				if (diagram.getFigures().get(j).getClass() != Triangle.class)
-					continue;
-				
-				// Get the triangles
-				Triangle tri0 = (Triangle) diagram.getFigures().get(i);
-				Triangle tri1 = (Triangle) diagram.getFigures().get(j);
-				
-				// Check if triangles are congruent (SSS, SAS, ASA)
-				
-				// SSS				
-				// Get corresponding segments--3 pairs of congruent segments
-				// are needed to make the triangles congruent by SSS
-				List<FigureRelation> corrSegs = getCorrespondingSegments(tri0, tri1);
-				if (corrSegs.size() == 3) {
-					FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
-					rel.addParents(corrSegs);
-					rel.setReason(ProofReasons.SSS);
-					diagram.addFigureRelation(rel);
-					continue;
-				}
-				
-				// SAS
-				
-				List<FigureRelation> sasRels = congruentBySAS(tri0, tri1);
-				if (sasRels.size() == 3) {
-					FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
-					rel.addParents(sasRels);
-					rel.setReason(ProofReasons.SAS);
-					diagram.addFigureRelation(rel);
-					continue;
-				}
-				
-				// ASA
-				
-				List<FigureRelation> asaRels = congruentByASA(tri0, tri1);
-				if (asaRels.size() == 3) {
-					FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
-					rel.addParents(asaRels);
-					rel.setReason(ProofReasons.ASA);
-					diagram.addFigureRelation(rel);
-					continue;
-				}
-			}
+	/**
+	 * @param touched the sides and angles whose congruences changed--each pair that is
+	 * checked must have a pair of congruent parts involving one of them. If null, all 
+	 * pairs with a pair of congruent parts are checked.
+	 */
+	private void findCongruentTriangles(Set<Figure> touched) {
+		applyTriangleRule(getCandidatePairs(touched), this::checkCongruentTriangles);
+	}
+	
+	private void checkCongruentTriangles(Triangle[] tris, RelationSink sink) {
+		Triangle tri0 = tris[0];
+		Triangle tri1 = tris[1];
+		
+		// Check if triangles are congruent (SSS, SAS, ASA)
+		
+		// SSS				
+		// Get corresponding segments--3 pairs of congruent segments
+		// are needed to make the triangles congruent by SSS
+		List<FigureRelation> corrSegs = getCorrespondingSegments(tri0, tri1);
+		if (corrSegs.size() == 3) {
+			FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
+			rel.addParents(corrSegs);
+			rel.setReason(ProofReasons.SSS);
+			sink.add(rel);
+			return;
+		}
+		
+		// SAS
+		
+		List<FigureRelation> sasRels = congruentBySAS(tri0, tri1);
+		if (sasRels.size() == 3) {
+			FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
+			rel.addParents(sasRels);
+			rel.setReason(ProofReasons.SAS);
+			sink.add(rel);
+			return;
+		}
+		
+		// ASA
+		
+		List<FigureRelation> asaRels = congruentByASA(tri0, tri1);
+		if (asaRels.size() == 3) {
+			FigureRelation rel = new FigureRelation(CONGRUENT, tri0, tri1);
+			rel.addParents(asaRels);
+			rel.setReason(ProofReasons.ASA);
+			sink.add(rel);
 		}
 	}
 	
@@ -640,9 +1444,18 @@ public class ProofSolver {
 		return parents;
 	}
 	
-	private void findPerpendicularSegments() {
+	/**
+	 * @param touched the right angles to be checked. If null, all angles are checked.
+	 */
+	private void findPerpendicularSegments(Set<Figure> touched) {
 		// For each angle
 		for (Angle a : diagram.getFiguresOfType(Angle.class)) {
+			checkLimits();
+			// Stop if the proof goal was reached
+			if (goalReached)
+				return;
+			if (touched != null && !touched.contains(a))
+				continue;
 			// See if this angle is a right angle
 			FigureRelation rightAngleRelation = diagram.getFigureRelation(RIGHT, a, null);
 			if (rightAngleRelation != null) {
@@ -662,6 +1475,174 @@ public class ProofSolver {
 		}
 	}
 	
+	/*
+	 * BUILT-IN RULES
+	 */
+	
+	private List<Rule> createBuiltInRules() {
+		List<Rule> rules = new ArrayList<>();
+		rules.add(new BuiltInRelationRule(PERPENDICULAR_SEGMENTS_RIGHT_ANGLES, PERPENDICULAR) {
+			@Override
+			public void apply(Diagram diagram, FigureRelation rel) {
+				handlePerpendicularPair(rel);
+			}
+		});
+		rules.add(new BuiltInRelationRule(BISECTORS, BISECTS) {
+			@Override
+			public void apply(Diagram diagram, FigureRelation rel) {
+				handleBisectPair(rel);
+			}
+		});
+		rules.add(new BuiltInRelationRule(SIMILAR_TRIANGLES_CORR_ANGLES, SIMILAR) {
+			@Override
+			public void apply(Diagram diagram, FigureRelation rel) {
+				handleSimilarTriangles(rel);
+			}
+		});
+		rules.add(new BuiltInRelationRule(MIDPOINTS, MIDPOINT) {
+			@Override
+			public void apply(Diagram diagram, FigureRelation rel) {
+				handleMidpoint(rel);
+			}
+		});
+		rules.add(new BuiltInRule(CONGRUENT_TRIANGLES, CONGRUENT) {
+			@Override
+			public void apply(Diagram diagram, List<FigureRelation> added) {
+				findCongruentTriangles(getTouchedFigures(added, CONGRUENT));
+			}
+		});
+		rules.add(new BuiltInRule(ISOSCELES_TRIANGLES, CONGRUENT) {
+			@Override
+			public void apply(Diagram diagram, List<FigureRelation> added) {
+				findIsoscelesTriangles(getTouchedTriangles(added));
+			}
+		});
+		rules.add(new BuiltInRule(SIMILAR_TRIANGLES, CONGRUENT) {
+			@Override
+			public void apply(Diagram diagram, List<FigureRelation> added) {
+				findSimilarTriangles(getTouchedFigures(added, CONGRUENT));
+			}
+		});
+		rules.add(new BuiltInRule(RIGHT_ANGLES_PERPENDICULAR_SEGMENTS, RIGHT) {
+			@Override
+			public void apply(Diagram diagram, List<FigureRelation> added) {
+				findPerpendicularSegments(getTouchedFigures(added, RIGHT));
+			}
+		});
+		return rules;
+	}
+	
+	/**
+	 * A built-in {@link Rule}, which is applied to the {@link Diagram} of this solver.
+	 */
+	private abstract class BuiltInRule implements Rule {
+		private String name;
+		private Set<FigureRelationType> triggers;
+		
+		public BuiltInRule(String name, FigureRelationType trigger) {
+			this.name = name;
+			triggers = Collections.unmodifiableSet(EnumSet.of(trigger));
+		}
+		
+		@Override
+		public String getName() {
+			return name;
+		}
+		
+		@Override
+		public Set<FigureRelationType> getTriggers() {
+			return triggers;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	/**
+	 * A built-in {@link RelationRule}, which is applied to the {@link Diagram} of
+	 * this solver.
+	 */
+	private abstract class BuiltInRelationRule extends RelationRule {
+		private String name;
+		private Set<FigureRelationType> triggers;
+		
+		public BuiltInRelationRule(String name, FigureRelationType trigger) {
+			this.name = name;
+			triggers = Collections.unmodifiableSet(EnumSet.of(trigger));
+		}
+		
+		@Override
+		public String getName() {
+			return name;
+		}
+		
+		@Override
+		public Set<FigureRelationType> getTriggers() {
+			return triggers;
+		}
+	}
+	
+	/**
+	 * Receives the {@link FigureRelation}s derived by a rule.
+	 */
+	private static interface RelationSink {
+		void add(FigureRelation rel);
+	}
+	
+	/**
+	 * A rule that derives {@link FigureRelation}s from a triangle, or a pair of triangles,
+	 * by reading the {@link Diagram}. The rule must not modify the {@link Diagram} itself.
+	 */
+	private static interface TriangleRule {
+		void apply(Triangle[] tris, RelationSink sink);
+	}
+	
+	/**
+	 * Applies a {@link TriangleRule} to a range of triangles (or pairs of triangles),
+	 * splitting the range between the threads of the pool. Records where the rule
+	 * derives a {@link FigureRelation} that is not already in the {@link Diagram}.
+	 */
+	private class TriangleRuleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** Number of triangles under which the range is not split anymore */
+		private static final int THRESHOLD = 16;
+		
+		private TriangleRule rule;
+		private List<Triangle[]> units;
+		private boolean[] derivesNew;
+		private int start, end;
+		
+		public TriangleRuleTask(TriangleRule rule, List<Triangle[]> units, 
+				boolean[] derivesNew, int start, int end) {
+			this.rule = rule;
+			this.units = units;
+			this.derivesNew = derivesNew;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start <= THRESHOLD) {
+				for (int i = start; i < end; i++) {
+					// Rethrown by ForkJoinPool#invoke on the solving thread
+					checkLimits();
+					final int index = i;
+					rule.apply(units.get(i), rel -> {
+						if (!derivesNew[index] && !diagram.containsFigureRelation(rel))
+							derivesNew[index] = true;
+					});
+				}
+				return;
+			}
+			final int middle = (start + end) / 2;
+			invokeAll(new TriangleRuleTask(rule, units, derivesNew, start, middle),
+					new TriangleRuleTask(rule, units, derivesNew, middle, end));
+		}
+	}
+	
 	/**
 	 * Finds the corresponding Segments of the two given Triangles, and
 	 * returns the respective FigureRelation that marks the two Segments as
@@ -685,4 +1666,74 @@ public class ProofSolver {
 		
 		return list;
 	}
+	
+	/**
+	 * Statistics of solving a proof.
+	 */
+	public static final class Statistics {
+		private final int rounds;
+		private final int relationCount;
+		private final long elapsedMillis;
+		private final Budget exhaustedBudget;
+		
+		private Statistics(int rounds, int relationCount, long elapsedMillis, 
+				Budget exhaustedBudget) {
+			this.rounds = rounds;
+			this.relationCount = relationCount;
+			this.elapsedMillis = elapsedMillis;
+			this.exhaustedBudget = exhaustedBudget;
+		}
+		
+		/**
+		 * Get the number of rounds that were started.
+		 */
+		public int getRounds() {
+			return rounds;
+		}
+		
+		/**
+		 * Get the number of {@link FigureRelation}s in the {@link Diagram} when solving
+		 * stopped.
+		 */
+		public int getRelationCount() {
+			return relationCount;
+		}
+		
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+		
+		/**
+		 * Get the {@link Budget} that was exhausted, or null if solving was not stopped by
+		 * a budget.
+		 */
+		public Budget getExhaustedBudget() {
+			return exhaustedBudget;
+		}
+		
+		@Override
+		public String toString() {
+			return "rounds=" + rounds + ", relations=" + relationCount + ", elapsed=" 
+					+ elapsedMillis + "ms" 
+					+ (exhaustedBudget == null ? "" : ", exhausted=" + exhaustedBudget);
+		}
+	}
+	
+	/**
+	 * Thrown to stop solving a proof once a {@link Budget} is exhausted.
+	 */
+	private static class BudgetExhaustedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		private final Budget budget;
+		
+		public BudgetExhaustedException(Budget budget) {
+			super(budget + " budget exhausted");
+			this.budget = budget;
+		}
+		
+		public Budget getBudget() {
+			return budget;
+		}
+	}
 }
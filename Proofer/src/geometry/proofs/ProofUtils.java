@@ -11,6 +11,7 @@ import geometry.shapes.Arc;
 import geometry.shapes.Segment;
 import geometry.shapes.Triangle;
 import geometry.shapes.Vertex;
+import geometry.shapes.VertexHash;
 
 import util.Utils;
 
@@ -370,7 +371,7 @@ public class ProofUtils {
 	 */
 	public static int compareAngleSynonyms(Angle a, Angle b) {
 		// Check if the angles share a center vertex
-		final boolean shareVertex = a.getCenter().equals(b.getCenter());
+		final boolean shareVertex = VertexHash.isSameLocation(a.getCenter(), b.getCenter());
 		if (shareVertex) {
 			// Get the angles' corresponding segments
 			Segment[][] corrSegs = getCorrespondingSegments(a, b);
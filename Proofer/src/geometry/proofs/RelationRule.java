@@ -0,0 +1,32 @@
+package geometry.proofs;
+
+import java.util.List;
+
+/**
+ * A {@link Rule} that derives {@link FigureRelation}s from a single relation (such as the
+ * right angles formed by a pair of perpendicular segments), regardless of the other
+ * relations in the {@link Diagram}. Each relation of the trigger types therefore only
+ * needs to be handled once.
+ */
+public abstract class RelationRule implements Rule {
+	
+	/**
+	 * Handle the given {@link FigureRelation}, adding the relations that it implies to
+	 * the given {@link Diagram}.
+	 * @param diagram the diagram
+	 * @param rel the relation (its type is one of the triggers of this rule)
+	 */
+	public abstract void apply(Diagram diagram, FigureRelation rel);
+	
+	@Override
+	public void apply(Diagram diagram, List<FigureRelation> added) {
+		for (FigureRelation rel : added) {
+			apply(diagram, rel);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return getName();
+	}
+}
@@ -0,0 +1,41 @@
+package geometry.proofs;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A theorem or postulate that the {@link ProofSolver} applies to derive new
+ * {@link FigureRelation}s from the ones in a {@link Diagram}.
+ * <p>
+ * A rule declares the types of {@link FigureRelation}s that it depends on (its triggers).
+ * The {@link ProofSolver} only applies a rule when relations of those types were added
+ * since the rule was last applied, so a rule whose triggers did not change never runs.
+ * 
+ * @see ProofSolver#addRule(Rule)
+ * @see RelationRule
+ */
+public interface Rule {
+	
+	/**
+	 * Get the name of this rule.
+	 */
+	public String getName();
+	
+	/**
+	 * Get the types of {@link FigureRelation}s that can make this rule derive new
+	 * relations.
+	 */
+	public Set<FigureRelationType> getTriggers();
+	
+	/**
+	 * Apply this rule, adding the {@link FigureRelation}s that it derives to the given
+	 * {@link Diagram}.
+	 * @param diagram the diagram
+	 * @param added the relations of the trigger types that were added since this rule was
+	 * last applied, in the order they were added (with {@link ProofSolver.Evaluation#NAIVE},
+	 * all of the relations of the trigger types). Relations that are not in this list
+	 * were already taken into account the last time the rule was applied.
+	 */
+	public void apply(Diagram diagram, List<FigureRelation> added);
+	
+}
@@ -0,0 +1,167 @@
+package geometry.proofs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the proof of a {@link FigureRelation} from its parents (and their parents, and
+ * so on). Parents are often shared (for instance by the steps of a transitive chain), so
+ * the parents form a directed acyclic graph rather than a tree. Each statement only
+ * appears once in a traceback, after all of the statements it depends on, and extracting
+ * it takes time proportional to the size of the graph.
+ * <p>
+ * The same statement can have several justifications in the graph (several
+ * {@link FigureRelation}s that are equal, but have different parents). Either the first
+ * justification that is found is used ({@link Traceback#getTraceback(FigureRelation)}), or
+ * the one with the shortest chain of reasoning
+ * ({@link Traceback#getShallowestTraceback(FigureRelation)}).
+ */
+public class Traceback {
+
+	private Traceback() {
+		throw new AssertionError("Do not instantiate Traceback");
+	}
+
+	/**
+	 * Get the traceback of the given {@link FigureRelation}: the relation, its parents, their
+	 * parents, and so on, each of which is only included once. Every relation comes after
+	 * its parents, so the given relation comes last. For a statement with several
+	 * justifications, the first one that is found is used.
+	 * @param goal the relation
+	 * @return the traceback
+	 */
+	public static FigureRelation[] getTraceback(FigureRelation goal) {
+		return getTraceback(goal, null);
+	}
+
+	/**
+	 * Get the traceback of the given {@link FigureRelation}, like
+	 * {@link Traceback#getTraceback(FigureRelation)}. For each statement with several
+	 * justifications, the one with the fewest steps between it and the given (its depth)
+	 * is used, so that the traceback is as short as possible.
+	 * @param goal the relation
+	 * @return the traceback
+	 */
+	public static FigureRelation[] getShallowestTraceback(FigureRelation goal) {
+		return getTraceback(goal, getShallowestJustifications(goal));
+	}
+
+	/**
+	 * Get the traceback of the given {@link FigureRelation} by a depth-first search of its
+	 * parents. A relation is added once all of its parents were added. The parents are
+	 * visited in reverse order, so that the last parent's steps come first.
+	 * @param justifications the justification to use for each statement, or null to use
+	 * the first one that is found
+	 */
+	private static FigureRelation[] getTraceback(FigureRelation goal,
+			Map<FigureRelation, FigureRelation> justifications) {
+		if (justifications != null)
+			goal = justifications.get(goal);
+		List<FigureRelation> traceback = new ArrayList<>();
+		// Statements that were visited (equal relations are the same statement)
+		Set<FigureRelation> visited = new HashSet<>();
+		// Relations whose parents are being visited, and the index of their next parent
+		Deque<FigureRelation> stack = new ArrayDeque<>();
+		Deque<Integer> nextParents = new ArrayDeque<>();
+		visited.add(goal);
+		stack.push(goal);
+		nextParents.push(goal.getParents().size() - 1);
+
+		while (!stack.isEmpty()) {
+			FigureRelation rel = stack.peek();
+			int next = nextParents.pop();
+			// Find the next parent that was not visited yet
+			FigureRelation parent = null;
+			for (; next >= 0 && parent == null; next--) {
+				FigureRelation candidate = rel.getParents().get(next);
+				if (!visited.contains(candidate))
+					parent = candidate;
+			}
+			if (parent == null) {
+				// All of the parents were added
+				stack.pop();
+				traceback.add(rel);
+				continue;
+			}
+			nextParents.push(next);
+
+			if (justifications != null)
+				parent = justifications.get(parent);
+			visited.add(parent);
+			stack.push(parent);
+			nextParents.push(parent.getParents().size() - 1);
+		}
+		return traceback.toArray(new FigureRelation[traceback.size()]);
+	}
+
+	/**
+	 * For each statement in the parents of the given {@link FigureRelation}, get its
+	 * justification with the lowest depth. The depth of a justification without parents
+	 * is 0, and that of any other justification is 1 + the highest depth of its parents'
+	 * statements (each of which uses its own shallowest justification).
+	 * <p>
+	 * Justifications are found in order of depth, level by level: a justification's depth is
+	 * known once the depths of all of its parents' statements are known, and the first
+	 * justification of a statement to be found is the shallowest.
+	 * @return the shallowest justification of each statement
+	 */
+	private static Map<FigureRelation, FigureRelation> getShallowestJustifications(
+			FigureRelation goal) {
+		// Find all of the justifications (distinct objects) in the parents of the goal,
+		// the number of distinct statements each one depends on, and, for each
+		// statement, the justifications that depend on it
+		Map<FigureRelation, Integer> unknownParents = new IdentityHashMap<>();
+		Map<FigureRelation, List<FigureRelation>> dependents = new HashMap<>();
+		Deque<FigureRelation> levels = new ArrayDeque<>();
+		Deque<FigureRelation> toVisit = new ArrayDeque<>();
+		unknownParents.put(goal, 0);
+		toVisit.push(goal);
+		while (!toVisit.isEmpty()) {
+			FigureRelation rel = toVisit.pop();
+			Set<FigureRelation> parentStatements = new HashSet<>(rel.getParents());
+			unknownParents.put(rel, parentStatements.size());
+			if (parentStatements.isEmpty())
+				levels.add(rel);
+			for (FigureRelation statement : parentStatements) {
+				List<FigureRelation> list = dependents.get(statement);
+				if (list == null) {
+					list = new ArrayList<>(2);
+					dependents.put(statement, list);
+				}
+				list.add(rel);
+			}
+			for (FigureRelation parent : rel.getParents()) {
+				if (!unknownParents.containsKey(parent)) {
+					unknownParents.put(parent, 0);
+					toVisit.push(parent);
+				}
+			}
+		}
+
+		// Breadth-first: justifications are found in order of depth
+		Map<FigureRelation, FigureRelation> justifications = new HashMap<>();
+		while (!levels.isEmpty()) {
+			FigureRelation rel = levels.poll();
+			if (justifications.containsKey(rel))
+				continue;
+			justifications.put(rel, rel);
+			List<FigureRelation> list = dependents.get(rel);
+			if (list == null)
+				continue;
+			for (FigureRelation dependent : list) {
+				final int unknown = unknownParents.get(dependent) - 1;
+				unknownParents.put(dependent, unknown);
+				if (unknown == 0)
+					levels.add(dependent);
+			}
+		}
+		return justifications;
+	}
+}
@@ -1,5 +1,6 @@
 package geometry.shapes;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import geometry.Vec2;
@@ -22,6 +23,13 @@ public abstract class AbstractShape implements Shape {
 	 */
 	private String name = "";
 	
+	/**
+	 * The chars of the name of this {@link AbstractShape} in sorted order. Two shapes
+	 * with valid names for each other have the same sorted name, so this is what
+	 * {@link AbstractShape#hashCode()} uses.
+	 */
+	private String sortedName = "";
+	
 	/**
 	 * The minimum length of the name of this {@link AbstractShape}
 	 */
@@ -73,7 +81,11 @@ public abstract class AbstractShape implements Shape {
 	public int hashCode() {
 		int result = 17;
 //		result = 31 * result + center.hashCode();
-		result = 31 * result + name.hashCode();
+		// Shapes of different types can have the same name (like triangle ABC and angle ABC).
+		// The name of the class is used rather than the class, so that the hash is the same
+		// on every run.
+		result = 31 * result + getClass().getName().hashCode();
+		result = 31 * result + sortedName.hashCode();
 		return result;
 	}
 	
@@ -98,6 +110,14 @@ public abstract class AbstractShape implements Shape {
 		name = name.toUpperCase();
 		this.name = Utils.mergeStringsAndEnsureCapacity(minNameLength, 
 				maxNameLength, this.name, name);
+		char[] chars = this.name.toCharArray();
+		Arrays.sort(chars);
+		sortedName = new String(chars);
+	}
+	
+	@Override
+	public String getCanonicalName() {
+		return sortedName;
 	}
 	
 	/**
@@ -183,6 +183,29 @@ public final class Angle extends AbstractShape {
 				getNameShort().charAt(0) == name.charAt(1);
 	}
 	
+	/**
+	 * Get the canonical name of this {@link Angle}. Only the order of the outer
+	 * chars of an angle's name does not matter (ABC = CBA), so the vertex stays in the
+	 * middle and the outer chars are sorted.
+	 */
+	@Override
+	public String getCanonicalName() {
+		return getCanonicalName(getName());
+	}
+	
+	/**
+	 * Get the canonical name of the {@link Angle} with the given name (see
+	 * {@link Angle#getCanonicalName()}).
+	 * @param name the name of the angle, which must be 3 chars long
+	 */
+	public static String getCanonicalName(String name) {
+		if (name.charAt(0) > name.charAt(2)) {
+			return new StringBuilder(3).append(name.charAt(2)).append(name.charAt(1))
+					.append(name.charAt(0)).toString();
+		}
+		return name;
+	}
+	
 	public String getNameShort() {
 		return String.valueOf(getName().charAt(1));
 	}
@@ -3,11 +3,18 @@ package geometry.shapes;
 import geometry.Dimension;
 import geometry.Vec2;
 import geometry.proofs.ProofUtils;
-import javafx.scene.shape.ArcType;
 
 
 public class Arc extends Vertex {
 	
+	/**
+	 * How an {@link Arc} is closed (the same as JavaFX's ArcType, so that the shape does not
+	 * depend on the user interface)
+	 */
+	public static enum ArcType {
+		OPEN, CHORD, ROUND
+	}
+	
 	private Dimension.Mutable size;
 	private float startAngle;
 	private float stopAngle;
@@ -220,7 +220,8 @@ public class VertexBuffer implements Iterable<Vertex> {
 	
 	/**
 	 * Update the name of the given vertex. If there is another vertex
-	 * in this {@link VertexBuffer} that shares the same location as the given
+	 * in this {@link VertexBuffer} that shares the same location (see
+	 * {@link VertexHash#isSameLocation(Vec2, Vec2)}) as the given
 	 * vertex but does not have the same name, their names will be set to the
 	 * same character. If they share the same name but are not on top of each
 	 * other, they will be given separate names.
@@ -241,7 +242,8 @@ public class VertexBuffer implements Iterable<Vertex> {
 				Vec2 otherVertLoc = vert.getCenter();
 				final char OTHER_VERT_NAME = vert.getNameChar();
 				
-				if (OTHER_VERT_NAME != VERTEX_NAME && otherVertLoc.equals(vertexLoc)) {
+				if (OTHER_VERT_NAME != VERTEX_NAME
+						&& VertexHash.isSameLocation(otherVertLoc, vertexLoc)) {
 					// We found another vertex with the same loc as the given vertex
 					// and with a different name
 					if (setVertexName(vertex, OTHER_VERT_NAME)) {
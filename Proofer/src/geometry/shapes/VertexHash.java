@@ -0,0 +1,81 @@
+package geometry.shapes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import geometry.Vec2;
+import util.SpatialGrid;
+
+/**
+ * A spatial hash of {@link Vertex}es by location. Two locations are considered to be the
+ * same if they are closer than {@link VertexHash#TOLERANCE}, so that rounding errors (for
+ * example, in computed points of intersection) do not keep a location from matching the
+ * vertex that lies there. The vertices are hashed into the cells of a {@link SpatialGrid},
+ * so a lookup only checks the vertices near a location.
+ * <p>
+ * NOTE: a vertex is hashed by its location at the time that it is added, so the vertices
+ * should not move while they are in a {@link VertexHash}.
+ */
+public class VertexHash {
+
+	/** The distance within which two locations are considered to be the same */
+	public static final float TOLERANCE = 0.05f;
+	/** The size of the cells of the grid */
+	private static final float CELL_SIZE = 1f;
+
+	// The vertices, in the order they were added
+	private List<Vertex> vertices;
+	// The indices of the vertices, hashed by location
+	private SpatialGrid<Integer> grid;
+
+	public VertexHash() {
+		vertices = new ArrayList<>();
+		grid = new SpatialGrid<>(CELL_SIZE);
+	}
+
+	/**
+	 * @param vertices the vertices to add, in order
+	 */
+	public VertexHash(Collection<? extends Vertex> vertices) {
+		this();
+		for (Vertex vertex : vertices) {
+			add(vertex);
+		}
+	}
+
+	/**
+	 * Add the given {@link Vertex} at its current location.
+	 */
+	public void add(Vertex vertex) {
+		grid.add(vertices.size(), vertex.getCenter());
+		vertices.add(vertex);
+	}
+
+	/**
+	 * Get the {@link Vertex} that lies at the given location.
+	 * @param loc the location
+	 * @return the vertex (the first one added, if more than one lies at the location), or
+	 * null if there is none
+	 */
+	public Vertex get(Vec2 loc) {
+		int first = -1;
+		for (int i : grid.getNear(loc, TOLERANCE)) {
+			if ((first < 0 || i < first) && isSameLocation(vertices.get(i).getCenter(), loc))
+				first = i;
+		}
+		return first < 0 ? null : vertices.get(first);
+	}
+
+	public int size() {
+		return vertices.size();
+	}
+
+	/**
+	 * Get whether the given locations are considered to be the same (whether they are
+	 * closer than {@link VertexHash#TOLERANCE}).
+	 */
+	public static boolean isSameLocation(Vec2 loc0, Vec2 loc1) {
+		return Vec2.dist(loc0, loc1) < TOLERANCE;
+	}
+}
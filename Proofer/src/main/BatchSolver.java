@@ -0,0 +1,358 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import geometry.proofs.Diagram;
+import geometry.proofs.Figure;
+import geometry.proofs.FigureRelation;
+import geometry.proofs.Preprocessor;
+import geometry.proofs.Problem;
+import geometry.proofs.ProblemReader;
+import geometry.proofs.ProblemWriter;
+import geometry.proofs.ProofSolver;
+import geometry.shapes.Vertex;
+
+/**
+ * Solves many proof {@link Problem}s without the user interface, using every core. The
+ * problems are read from files in the format of {@link ProblemReader} while they are being
+ * solved, and each result is printed to {@link System#out} as soon as it is known:
+ * <pre>
+ * name	OUTCOME	latency	statistics
+ * 	traceback...
+ * </pre>
+ * A summary (throughput and latencies) is printed to {@link System#err} at the end. The
+ * solved problems can also be saved with their derived relations (see {@link ProblemWriter}).
+ * <p>
+ * Usage: <code>BatchSolver [options] &lt;file or directory&gt;...</code>
+ */
+public class BatchSolver {
+
+	/** The exit status when every problem could be read and solved */
+	public static final int EXIT_OK = 0;
+	/** The exit status when some problems could not be read or solved */
+	public static final int EXIT_ERRORS = 1;
+	/** The exit status when the arguments are not valid */
+	public static final int EXIT_USAGE = 2;
+
+	private static final String USAGE = "Usage: BatchSolver [options] <file or directory>...\n"
+			+ "  -j, --threads N       solve N problems at a time (default: number of cores)\n"
+			+ "  --virtual             use a virtual thread per problem (Java 21+)\n"
+			+ "  --strategy S          forward or backward (default: forward)\n"
+			+ "  --timeout MS          give up on a problem after MS milliseconds\n"
+			+ "  --max-relations N     give up on a problem after N relations\n"
+			+ "  --no-traceback        do not print the tracebacks\n"
+			+ "  --save FILE           save the solved problems and their relations to FILE";
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean virtualThreads = false;
+	private ProofSolver.Strategy strategy = ProofSolver.Strategy.FORWARD;
+	private long timeLimit = 0;
+	private int maxRelations = 0;
+	private boolean printTraceback = true;
+	private File saveFile = null;
+	private List<File> files = new ArrayList<>();
+
+	private PrintStream out = System.out;
+	// Saves the solved problems (guarded by this)
+	private ProblemWriter writer = null;
+	// The results so far (guarded by this)
+	private List<Long> latencies = new ArrayList<>();
+	private Map<ProofSolver.Outcome, Integer> outcomeCounts =
+			new EnumMap<>(ProofSolver.Outcome.class);
+	private int errorCount = 0;
+
+	public static void main(String[] args) {
+		BatchSolver solver = new BatchSolver();
+		try {
+			solver.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		}
+		System.exit(solver.run());
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the arguments are not valid
+	 */
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			final String arg = args[i];
+			switch (arg) {
+			case "-j":
+			case "--threads":
+				threads = (int) parsePositive(arg, args, ++i);
+				break;
+			case "--virtual":
+				virtualThreads = true;
+				break;
+			case "--strategy":
+				try {
+					strategy = ProofSolver.Strategy.valueOf(
+							getValue(arg, args, ++i).toUpperCase(Locale.ROOT));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Unknown strategy: " + args[i]);
+				}
+				break;
+			case "--timeout":
+				timeLimit = parsePositive(arg, args, ++i);
+				break;
+			case "--max-relations":
+				maxRelations = (int) parsePositive(arg, args, ++i);
+				break;
+			case "--no-traceback":
+				printTraceback = false;
+				break;
+			case "--save":
+				saveFile = new File(getValue(arg, args, ++i));
+				break;
+			case "-h":
+			case "--help":
+				System.out.println(USAGE);
+				System.exit(EXIT_OK);
+				break;
+			default:
+				if (arg.startsWith("-"))
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				addFiles(new File(arg));
+			}
+		}
+		if (files.isEmpty())
+			throw new IllegalArgumentException("No problem files given");
+	}
+
+	private static String getValue(String option, String[] args, int i) {
+		if (i >= args.length)
+			throw new IllegalArgumentException(option + " needs a value");
+		return args[i];
+	}
+
+	private static long parsePositive(String option, String[] args, int i) {
+		final String value = getValue(option, args, i);
+		try {
+			final long n = Long.parseLong(value);
+			if (n > 0 && n <= Integer.MAX_VALUE)
+				return n;
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException(option + " needs a positive number: " + value);
+	}
+
+	/**
+	 * Add the given file, or the files in the given directory (recursively, in order).
+	 */
+	private void addFiles(File file) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null)
+				throw new IllegalArgumentException("Cannot read directory: " + file);
+			Arrays.sort(children);
+			for (File child : children) {
+				addFiles(child);
+			}
+		} else if (file.isFile()) {
+			files.add(file);
+		} else {
+			throw new IllegalArgumentException("No such file: " + file);
+		}
+	}
+
+	/**
+	 * Solve every problem.
+	 * @return the exit status
+	 */
+	private int run() {
+		ExecutorService pool;
+		try {
+			pool = createPool();
+		} catch (UnsupportedOperationException e) {
+			System.err.println(e.getMessage());
+			return EXIT_USAGE;
+		}
+		if (saveFile != null) {
+			try {
+				writer = new ProblemWriter(Files.newBufferedWriter(saveFile.toPath(),
+						StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				System.err.println("Cannot write " + saveFile + ": " + e.getMessage());
+				pool.shutdown();
+				return EXIT_USAGE;
+			}
+		}
+		// Keep the reader from getting far ahead of the workers, so that only a few
+		// problems are in memory at a time
+		final Semaphore inFlight = new Semaphore(virtualThreads ? 4 * threads : 2 * threads);
+		final long start = System.nanoTime();
+
+		for (File file : files) {
+			try (ProblemReader reader = new ProblemReader(
+					Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8),
+					file.getPath())) {
+				Problem problem;
+				while ((problem = reader.next()) != null) {
+					inFlight.acquireUninterruptibly();
+					final Problem task = problem;
+					pool.execute(() -> {
+						try {
+							solve(task);
+						} finally {
+							inFlight.release();
+						}
+					});
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				reportError(file.getPath(), e);
+			}
+		}
+
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				reportError(saveFile.getPath(), e);
+			}
+		}
+		printSummary((System.nanoTime() - start) / 1000000L);
+		return errorCount == 0 ? EXIT_OK : EXIT_ERRORS;
+	}
+
+	/**
+	 * Create the pool of worker threads. Virtual threads are created through reflection,
+	 * because they do not exist before Java 21.
+	 * @throws UnsupportedOperationException if virtual threads are requested but do not exist
+	 */
+	private ExecutorService createPool() {
+		if (!virtualThreads)
+			return Executors.newFixedThreadPool(threads);
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException(
+					"Virtual threads are not supported by this version of Java");
+		}
+	}
+
+	/**
+	 * Solve the given problem and print its result, on a worker thread.
+	 */
+	private void solve(Problem problem) {
+		final long start = System.nanoTime();
+		Diagram diagram;
+		ProofSolver solver;
+		try {
+			diagram = Preprocessor.generateDiagram(problem);
+			solver = new ProofSolver(diagram);
+			solver.setVerbose(false);
+			solver.setStrategy(strategy);
+			solver.setTimeLimit(timeLimit);
+			solver.setMaxRelations(maxRelations);
+			solver.solve();
+		} catch (RuntimeException e) {
+			reportError(problem.getName(), e);
+			return;
+		}
+		final long latency = (System.nanoTime() - start) / 1000000L;
+
+		// Build the whole result first, so that results of different problems do not mix
+		StringBuilder result = new StringBuilder();
+		result.append(problem.getName()).append('\t').append(solver.getOutcome())
+				.append('\t').append(latency).append("ms\t").append(solver.getStatistics())
+				.append(System.lineSeparator());
+		if (printTraceback && solver.getOutcome() == ProofSolver.Outcome.PROVEN) {
+			for (FigureRelation rel : solver.getTraceback()) {
+				result.append('\t').append(rel).append(System.lineSeparator());
+			}
+		}
+		synchronized (this) {
+			latencies.add(latency);
+			outcomeCounts.merge(solver.getOutcome(), 1, Integer::sum);
+			out.print(result);
+			out.flush();
+		}
+		if (writer != null)
+			save(problem, diagram);
+	}
+
+	/**
+	 * Save the given solved problem, along with the relations of its diagram.
+	 */
+	private void save(Problem problem, Diagram diagram) {
+		Problem solved = new Problem(problem.getName());
+		for (Vertex vertex : problem.getVertices()) {
+			solved.addVertex(vertex);
+		}
+		// Including the hidden vertices
+		solved.addVertices(diagram);
+		for (Figure fig : problem.getFigures()) {
+			solved.addFigure(fig);
+		}
+		for (Problem.Statement given : problem.getGivens()) {
+			solved.addGiven(given);
+		}
+		solved.setGoal(problem.getGoal());
+		solved.addRelations(diagram.getFigureRelations());
+		synchronized (this) {
+			try {
+				writer.write(solved);
+			} catch (IOException | IllegalArgumentException e) {
+				reportError(problem.getName(), e);
+			}
+		}
+	}
+
+	private synchronized void reportError(String name, Exception e) {
+		errorCount++;
+		out.println(name + "\tERROR\t" + e.getMessage());
+		out.flush();
+	}
+
+	private synchronized void printSummary(long elapsedMillis) {
+		final int solved = latencies.size();
+		System.err.printf(Locale.ROOT, "%d problems in %dms (%.1f problems/s, %d threads%s)%n",
+				solved, elapsedMillis,
+				elapsedMillis == 0 ? 0.0 : solved * 1000.0 / elapsedMillis,
+				threads, virtualThreads ? ", virtual" : "");
+		for (ProofSolver.Outcome outcome : ProofSolver.Outcome.values()) {
+			System.err.println(outcome + ": " + outcomeCounts.getOrDefault(outcome, 0));
+		}
+		if (errorCount > 0)
+			System.err.println("ERROR: " + errorCount);
+		if (solved > 0) {
+			Long[] sorted = latencies.toArray(new Long[solved]);
+			Arrays.sort(sorted);
+			System.err.println("Latency: p50=" + percentile(sorted, 50) + "ms, p90="
+					+ percentile(sorted, 90) + "ms, max=" + sorted[solved - 1] + "ms");
+		}
+	}
+
+	/**
+	 * Get the given percentile of the given sorted values (nearest rank).
+	 */
+	private static long percentile(Long[] sorted, int percent) {
+		final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+}
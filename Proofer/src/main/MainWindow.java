@@ -24,6 +24,7 @@ public class MainWindow extends Application {
 	private static final double DEF_FIG_REL_PANEL_WIDTH = 360;
 	
 	private DiagramCanvas canvas;
+	private FigureRelationListPanel relListPanel;
 	
 	public static void main(String[] args) {
 		launch(args);
@@ -31,6 +32,9 @@ public class MainWindow extends Application {
 	
 	@Override
 	public void stop() {
+		// Stop solving the proofs
+		if (relListPanel != null)
+			relListPanel.shutdown();
 	}
 	
 	@Override
@@ -43,8 +47,7 @@ public class MainWindow extends Application {
 		Scene scene = new Scene(group, DEF_WIDTH, DEF_HEIGHT);
 		
 		// Create FigureRelationListPanel
-		FigureRelationListPanel relListPanel = 
-				new FigureRelationListPanel(scene, this, DEF_FIG_REL_PANEL_WIDTH);
+		relListPanel = new FigureRelationListPanel(scene, this, DEF_FIG_REL_PANEL_WIDTH);
 
 		// Create canvas
 		// Width is left-over space from the FigureRelationListPanel
@@ -1,17 +1,33 @@
 package ui;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import geometry.proofs.Diagram;
+import geometry.proofs.Figure;
 import geometry.proofs.FigureRelationType;
 import geometry.proofs.Preprocessor;
+import geometry.proofs.Problem;
+import geometry.proofs.ProblemReader;
+import geometry.proofs.ProblemWriter;
 import geometry.proofs.ProofSolveRequestManager;
 import geometry.proofs.ProofSolveRequestManager.Request;
 import geometry.proofs.ProofSolver;
+import geometry.shapes.Vertex;
+import geometry.shapes.VertexHash;
+import geometry.shapes.VertexShape;
 
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.EventHandler;
@@ -33,9 +49,11 @@ import javafx.scene.layout.CornerRadii;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import main.MainWindow;
+import ui.canvas.diagram.DiagramCanvas;
 
 public class FigureRelationListPanel extends VBox {
 		
@@ -50,10 +68,19 @@ public class FigureRelationListPanel extends VBox {
 //	private HBox buttonPanel;
 	private FlowPane buttonPanel;
 	
-	private Button addButton, removeButton, solveButton;
+	private Button addButton, removeButton, openButton, saveButton, solveButton, cancelButton;
+	
+	/** The extension of the files that problems are saved to */
+	public static final String PROBLEM_FILE_EXTENSION = ".proof";
 	
 	private FigureRelationPanel proofObjectivePanel;
 	
+	// Solves the proofs off of the JavaFX application thread
+	private ProofSolveRequestManager solveRequestManager = 
+			new ProofSolveRequestManager(Platform::runLater);
+	// The proof that is being solved (null if none)
+	private CompletableFuture<ProofSolver> solveFuture;
+	
 	public FigureRelationListPanel(Scene scene, MainWindow win, double defWidth) {
 		mainWindow = win;
 		this.scene = scene;
@@ -124,9 +151,28 @@ public class FigureRelationListPanel extends VBox {
 		});
 		buttonPanel.getChildren().add(removeButton);
 		
+		// OPEN AND SAVE BUTTONS
+		openButton = new Button("Open");
+		openButton.setOnAction(e -> openProblem());
+		buttonPanel.getChildren().add(openButton);
+		
+		saveButton = new Button("Save");
+		saveButton.setOnAction(e -> saveProblem());
+		buttonPanel.getChildren().add(saveButton);
+		
 		// SOLVE BUTTON
 		createSolveButton();
 		buttonPanel.getChildren().add(solveButton);
+		
+		// CANCEL BUTTON
+		cancelButton = new Button("Cancel");
+		// Disabled while no proof is being solved
+		cancelButton.setDisable(true);
+		cancelButton.setOnAction(e -> {
+			if (solveFuture != null)
+				solveFuture.cancel(false);
+		});
+		buttonPanel.getChildren().add(cancelButton);
 	}
 	
 	private void createSolveButton() {
@@ -135,14 +181,17 @@ public class FigureRelationListPanel extends VBox {
 		solveButton.setDisable(true);
 //		solveButton.setStyle("-fx-background-color: green");
 		solveButton.setOnAction(e -> {
-			// Attempt to create a Diagram with the current canvas
-			Diagram diagram = Preprocessor.generateDiagram(mainWindow.getCanvas(), this);
-			// Abort if no success
-			if (diagram == null) {
-				return;
-			}
-			// Request the proof to be solved
-			ProofSolveRequestManager.requestSolveProof(new Request(diagram) {
+			// Request the proof of the current canvas to be solved (its diagram is generated
+			// on the worker thread, and a newer request for the same canvas replaces this one
+			// if it has not started yet)
+			final CompletableFuture<ProofSolver> future = solveRequestManager.requestSolveProof(
+					new Request(createProblem(), mainWindow.getCanvas()) {
+				@Override
+				public void configureSolver(ProofSolver solver) {
+					// Stop before running out of memory
+					solver.setMaxHeapBytes(Runtime.getRuntime().maxMemory() / 4 * 3);
+				}
+				
 				@Override
 				public void onRequestCompleted(ProofSolver solver) {
 					if (solver.getResult()) {
@@ -153,6 +202,12 @@ public class FigureRelationListPanel extends VBox {
 			            group.getChildren().add(new ProofResultPanel(solver.getTraceback()));
 			            stage.setScene(new Scene(group));
 			            stage.show();
+					} else if (solver.getOutcome() == ProofSolver.Outcome.INCONCLUSIVE) {
+						// Display dialog showing that the solver gave up
+						Alert alert = new Alert(AlertType.ERROR, "The proof could not be "
+								+ "solved within the solver's limits (" 
+								+ solver.getStatistics() + ")", ButtonType.OK);
+						alert.showAndWait();
 					} else {
 						// Display dialog showing that proof is not solvable
 						Alert alert = new Alert(AlertType.ERROR, "The given proof is not "
@@ -160,10 +215,171 @@ public class FigureRelationListPanel extends VBox {
 						alert.showAndWait();
 					}
 				}
+				
+				@Override
+				public void onRequestTimedOut() {
+					Alert alert = new Alert(AlertType.ERROR, "The proof took too long "
+							+ "to solve", ButtonType.OK);
+					alert.showAndWait();
+				}
+				
+				@Override
+				public void onRequestFailed(Throwable ex) {
+					// A given or the proof objective is not valid
+					final String message = ex instanceof IllegalArgumentException 
+							? ex.getMessage() : "The proof could not be solved: " + ex;
+					Alert alert = new Alert(AlertType.ERROR, message, ButtonType.OK);
+					alert.showAndWait();
+				}
 			});
+			solveFuture = future;
+			cancelButton.setDisable(false);
+			future.whenComplete((solver, ex) -> Platform.runLater(() -> {
+				// Unless a newer proof is being solved
+				if (solveFuture == future) {
+					solveFuture = null;
+					cancelButton.setDisable(true);
+				}
+			}));
 		});
 	}
 	
+	/**
+	 * Create a {@link Problem} from the figures of the canvas, the given, and the proof
+	 * objective. The problem holds copies of the figures, so the canvas can still be edited
+	 * while it is being solved.
+	 */
+	private Problem createProblem() {
+		Problem problem = new Problem("Diagram");
+		for (Figure fig : mainWindow.getCanvas().getFigures()) {
+			problem.addFigure(fig);
+		}
+		for (FigureRelationPanel panel : panels) {
+			// Ensure content
+			if (panel.hasContent())
+				problem.addGiven(createStatement(panel));
+		}
+		problem.setGoal(createStatement(proofObjectivePanel));
+		return problem;
+	}
+	
+	private static Problem.Statement createStatement(FigureRelationPanel panel) {
+		return new Problem.Statement(panel.getRelationType(), 
+				panel.getFigTextField0().getText(), panel.getFigTextField1().getText());
+	}
+	
+	/**
+	 * Save the figures of the canvas, the given, and the proof objective to a file chosen by
+	 * the user (see {@link ProblemWriter}).
+	 */
+	private void saveProblem() {
+		File file = createFileChooser().showSaveDialog(scene.getWindow());
+		if (file == null)
+			return;
+		Problem problem = createProblem();
+		// Save every point (including the hidden vertices)
+		problem.addVertices(Preprocessor.compileFigures(problem.getFigures(), 
+				Diagram.Policy.FIGURES_ONLY));
+		try (ProblemWriter writer = new ProblemWriter(
+				Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+			writer.write(problem);
+		} catch (IOException | IllegalArgumentException ex) {
+			Alert alert = new Alert(AlertType.ERROR, "The problem could not be saved: " 
+					+ ex.getMessage(), ButtonType.OK);
+			alert.showAndWait();
+		}
+	}
+	
+	/**
+	 * Open the first problem of a file chosen by the user (see {@link ProblemReader}).
+	 */
+	private void openProblem() {
+		File file = createFileChooser().showOpenDialog(scene.getWindow());
+		if (file == null)
+			return;
+		try (ProblemReader reader = new ProblemReader(
+				Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8), file.getName())) {
+			Problem problem = reader.next();
+			if (problem == null)
+				throw new IllegalArgumentException(file.getName() + " has no problems");
+			loadProblem(problem);
+		} catch (IOException | IllegalArgumentException ex) {
+			Alert alert = new Alert(AlertType.ERROR, "The problem could not be opened: " 
+					+ ex.getMessage(), ButtonType.OK);
+			alert.showAndWait();
+		}
+	}
+	
+	private static FileChooser createFileChooser() {
+		FileChooser chooser = new FileChooser();
+		chooser.getExtensionFilters().addAll(
+				new FileChooser.ExtensionFilter("Problems", "*" + PROBLEM_FILE_EXTENSION),
+				new FileChooser.ExtensionFilter("All files", "*"));
+		return chooser;
+	}
+	
+	/**
+	 * Show the given {@link Problem}: its figures on the canvas, and its statements in the
+	 * panels. The canvas names the vertices itself, so the vertex names in the statements are
+	 * translated to the names of the vertices at the same locations.
+	 * @param problem the problem
+	 * @throws IllegalArgumentException if a figure cannot be shown on the canvas
+	 */
+	public void loadProblem(Problem problem) {
+		DiagramCanvas canvas = mainWindow.getCanvas();
+		canvas.setFigures(problem.getFigures());
+		
+		// Find the new name of each vertex by its location
+		Diagram snapshot = Preprocessor.compileFigures(canvas.getFigures(), 
+				Diagram.Policy.FIGURES_ONLY);
+		VertexHash canvasVertices = new VertexHash(snapshot.getFiguresOfType(Vertex.class));
+		List<Vertex> vertices = new ArrayList<>(problem.getVertices());
+		for (Figure fig : problem.getFigures()) {
+			vertices.addAll(Arrays.asList(((VertexShape) fig).getVertices()));
+		}
+		Map<Character, Character> names = new HashMap<>();
+		for (Vertex vertex : vertices) {
+			Vertex renamed = canvasVertices.get(vertex.getCenter());
+			if (renamed != null)
+				names.putIfAbsent(vertex.getNameChar(), renamed.getNameChar());
+		}
+		
+		// Show the statements
+		removeFigureRelationPanels(panels.size());
+		for (Problem.Statement given : problem.getGivens()) {
+			addFigureRelationPanel(new FigureRelationPanel(FigureRelationPanel.Type.GIVEN, 
+					given.getType(), renameFigure(given.getFigure0(), names), 
+					renameFigure(given.getFigure1(), names)));
+		}
+		if (panels.isEmpty())
+			addEmptyFigureRelationPanels(1);
+		Problem.Statement goal = problem.getGoal();
+		if (goal != null) {
+			proofObjectivePanel.getRelationBox().getSelectionModel().select(
+					goal.getType().toString());
+			proofObjectivePanel.getFigTextField0().setText(
+					renameFigure(goal.getFigure0(), names));
+			proofObjectivePanel.getFigTextField1().setText(
+					renameFigure(goal.getFigure1(), names));
+		}
+		updateSolveButton();
+	}
+	
+	/**
+	 * Replace the vertex names in the given figure name (for example, "<ABC" or "^ABC").
+	 */
+	private static String renameFigure(String figure, Map<Character, Character> names) {
+		if (figure == null)
+			return "";
+		StringBuilder renamed = new StringBuilder(figure);
+		for (int i = 0; i < renamed.length(); i++) {
+			Character name = names.get(renamed.charAt(i));
+			if (name != null)
+				renamed.setCharAt(i, name);
+		}
+		return renamed.toString();
+	}
+	
 	private void handleWindowMaintenance() {
 		/*
 		 * Prevents canvas from not being able to regain focus after it
@@ -205,6 +421,14 @@ public class FigureRelationListPanel extends VBox {
 	 * END INITIALIZATION METHODS
 	 */
 	
+	/**
+	 * Cancel the proof that is being solved, and stop the threads that solve the proofs.
+	 * Call this when the window of this panel is closed.
+	 */
+	public void shutdown() {
+		solveRequestManager.shutdown();
+	}
+	
 	private void updateSolveButton() {
 		final boolean firstFieldEmpty = proofObjectivePanel.getFigTextField0().getText()
     			.isEmpty();
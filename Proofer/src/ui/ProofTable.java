@@ -1,7 +1,9 @@
 package ui;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import geometry.proofs.FigureRelation;
 import geometry.proofs.ProofSolver;
@@ -76,14 +78,11 @@ public class ProofTable extends TableView<FormattedFigureRelation> {
 		ObservableList<FormattedFigureRelation> formatted = FXCollections.observableArrayList();
 		
 		int stepNum = 1; // Step number of statement/reason in proof
-		outer:
+		Set<FigureRelation> added = new HashSet<>();
 		for (FigureRelation rel : data) {
 			// No duplicates
-			for (FormattedFigureRelation other : formatted) {
-				if (other.getFigureRelation().equals(rel)) {
-					continue outer;
-				}
-			}
+			if (!added.add(rel))
+				continue;
 			
 			// Creating a new branch (new branch if not first step and no parents)
 			if (rel.getParents().size() == 0 && stepNum > 1)
@@ -13,7 +13,9 @@ import geometry.proofs.Diagram;
 import geometry.proofs.Figure;
 import geometry.proofs.FigureRelation;
 import geometry.proofs.Preprocessor;
+import geometry.proofs.Problem;
 import geometry.proofs.ProofReasons;
+import geometry.shapes.Segment;
 import geometry.shapes.Shape;
 import geometry.shapes.Triangle;
 import geometry.shapes.Vertex;
@@ -26,6 +28,7 @@ import ui.FigureRelationPanel;
 import ui.canvas.AdvancedCanvas;
 import ui.canvas.Brush;
 import ui.canvas.GraphicsPolygonChild;
+import ui.canvas.GraphicsSegment;
 import ui.canvas.GraphicsShape;
 import ui.canvas.GraphicsTriangle;
 import ui.canvas.GraphicsVertexBuffer;
@@ -191,6 +194,38 @@ public class DiagramCanvas extends AdvancedCanvas implements VertexBufferListene
 		}
 	}
 	
+	/**
+	 * Replace the figures of the diagram with copies of the given {@link Segment}s and
+	 * {@link Triangle}s (for example, the figures of a {@link Problem} that was loaded). The
+	 * vertices of the copies are renamed by the {@link VertexBuffer}, and merged where they
+	 * are snapped to the same point.
+	 * @param figures the figures
+	 * @throws IllegalArgumentException if a figure is not a segment or a triangle
+	 */
+	public void setFigures(Collection<? extends Figure> figures) {
+		for (Figure fig : figures) {
+			if (!(fig instanceof Segment || fig instanceof Triangle))
+				throw new IllegalArgumentException("Cannot add " + fig.getClass()
+						.getSimpleName() + " " + fig + " to the canvas");
+		}
+		inputManager.destroyAllSelectors();
+		removeDiagramFigures(new ArrayList<>(diagramFigures));
+		
+		for (Figure fig : figures) {
+			GraphicsShape<?> shape;
+			if (fig instanceof Triangle) {
+				shape = new GraphicsTriangle(StyleManager.getDefaultFigureBrush(), 
+						new Triangle((Triangle) fig));
+			} else {
+				shape = new GraphicsSegment(StyleManager.getStrokeFigureBrush(), 
+						new Segment((Segment) fig));
+			}
+			addDiagramFigure(shape);
+			updateVertexNamesInVertexShape((VertexShape) shape.getShape());
+		}
+		redraw();
+	}
+	
 	public boolean containsDiagramFigure(String name, Class<?> c) {
 		for (GraphicsShape<?> gshape : diagramFigures) {
 			Figure shape = gshape.getShape();
@@ -217,7 +252,7 @@ public class DiagramCanvas extends AdvancedCanvas implements VertexBufferListene
 		 */
 		
 		// Get list of all figures, included invisible hidden ones
-		Diagram snapshot = Preprocessor.compileFigures(this, Diagram.Policy.FIGURES_ONLY);
+		Diagram snapshot = Preprocessor.compileFigures(getFigures(), Diagram.Policy.FIGURES_ONLY);
 		
 		// Remove outdated figures
 		renderList.clearLayerList(UIDiagramLayers.INVISIBLE_HIDDEN_FIGURES);
@@ -485,7 +520,7 @@ public class DiagramCanvas extends AdvancedCanvas implements VertexBufferListene
 		recentHiddenVertices.clear();
 		
 		// Create a snapshot Diagram of this canvas at this point in time
-		Diagram snapshot = Preprocessor.compileFigures(this, Diagram.Policy.FIGURES_ONLY);
+		Diagram snapshot = Preprocessor.compileFigures(getFigures(), Diagram.Policy.FIGURES_ONLY);
 		// Get the hidden vertices
 		List<Vertex> newHiddenVerts = snapshot.getHiddenFigures(Vertex.class);
 		
@@ -560,6 +595,18 @@ public class DiagramCanvas extends AdvancedCanvas implements VertexBufferListene
 		return diagramFigures;
 	}
 	
+	/**
+	 * Get the {@link Figure}s of the diagram (the shapes of {@link #getDiagramFigures()}),
+	 * to be compiled by the {@link Preprocessor}.
+	 */
+	public List<Figure> getFigures() {
+		List<Figure> figures = new ArrayList<>(diagramFigures.size());
+		for (GraphicsShape<?> shape : diagramFigures) {
+			figures.add(shape.getShape());
+		}
+		return figures;
+	}
+	
 	public RenderList getRenderList() {
 		return renderList;
 	}
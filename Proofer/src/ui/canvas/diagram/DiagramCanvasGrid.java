@@ -6,6 +6,7 @@ import geometry.Dimension;
 import geometry.Vec2;
 import geometry.shapes.Polygon;
 import geometry.shapes.Vertex;
+import geometry.shapes.VertexHash;
 
 import javafx.scene.input.MouseEvent;
 
@@ -97,7 +98,7 @@ public class DiagramCanvasGrid implements Drawable {
 	 */
 	public boolean pointIsSnapped(Vec2 loc) {
 		Vec2 nearestSnap = getNearestSnapPoint(loc);
-		return loc.equals(nearestSnap);
+		return VertexHash.isSameLocation(loc, nearestSnap);
 	}
 	
 	@Override
@@ -0,0 +1,114 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import geometry.Vec2;
+
+/**
+ * A uniform grid of square cells that objects are hashed into by location. An object
+ * is stored in every cell that its bounding box overlaps, so two objects can only touch
+ * if they share a cell, and only the objects near a location need to be checked to find
+ * the ones at that location.
+ * @param <T> the type of the objects
+ */
+public class SpatialGrid<T> {
+
+	private final float cellSize;
+	// The objects in each (non-empty) cell, in the order they were added
+	private final Map<Long, List<T>> cells;
+
+	/**
+	 * @param cellSize the width and height of the cells
+	 * @throws IllegalArgumentException if the cell size is not positive
+	 */
+	public SpatialGrid(float cellSize) {
+		if (!(cellSize > 0f) || Float.isInfinite(cellSize))
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+		this.cellSize = cellSize;
+		cells = new HashMap<>();
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Add the given object at the given location.
+	 */
+	public void add(T obj, Vec2 loc) {
+		add(obj, loc.getX(), loc.getY(), loc.getX(), loc.getY());
+	}
+
+	/**
+	 * Add the given object to every cell that the given bounding box overlaps.
+	 */
+	public void add(T obj, float minX, float minY, float maxX, float maxY) {
+		final int maxCellX = toCell(maxX);
+		final int maxCellY = toCell(maxY);
+		for (int x = toCell(minX); x <= maxCellX; x++) {
+			for (int y = toCell(minY); y <= maxCellY; y++) {
+				List<T> cell = cells.get(getKey(x, y));
+				if (cell == null) {
+					cell = new ArrayList<>(2);
+					cells.put(getKey(x, y), cell);
+				}
+				cell.add(obj);
+			}
+		}
+	}
+
+	/**
+	 * Get the objects in the cells that the given bounding box overlaps. An object that
+	 * lies in several of the cells is included once for each of them.
+	 */
+	public List<T> get(float minX, float minY, float maxX, float maxY) {
+		final int minCellX = toCell(minX);
+		final int minCellY = toCell(minY);
+		final int maxCellX = toCell(maxX);
+		final int maxCellY = toCell(maxY);
+		// Common case: a single cell
+		if (minCellX == maxCellX && minCellY == maxCellY) {
+			List<T> cell = cells.get(getKey(minCellX, minCellY));
+			return cell == null ? Collections.emptyList() : Collections.unmodifiableList(cell);
+		}
+		List<T> objs = new ArrayList<>();
+		for (int x = minCellX; x <= maxCellX; x++) {
+			for (int y = minCellY; y <= maxCellY; y++) {
+				List<T> cell = cells.get(getKey(x, y));
+				if (cell != null)
+					objs.addAll(cell);
+			}
+		}
+		return objs;
+	}
+
+	/**
+	 * Get the objects within the given distance of the given location (along each
+	 * axis), along with the objects in the same cells.
+	 */
+	public List<T> getNear(Vec2 loc, float range) {
+		return get(loc.getX() - range, loc.getY() - range,
+				loc.getX() + range, loc.getY() + range);
+	}
+
+	/**
+	 * Get the contents of every non-empty cell.
+	 * @return an unmodifiable view of the cells
+	 */
+	public Collection<List<T>> getCells() {
+		return Collections.unmodifiableCollection(cells.values());
+	}
+
+	private int toCell(float coord) {
+		return (int) Math.floor(coord / cellSize);
+	}
+
+	private static long getKey(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+}
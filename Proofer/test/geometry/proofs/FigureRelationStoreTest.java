@@ -0,0 +1,62 @@
+package geometry.proofs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import geometry.Vec2;
+import geometry.shapes.Segment;
+import geometry.shapes.Vertex;
+
+public class FigureRelationStoreTest {
+
+	/**
+	 * Create the segments AB, AC, ..., AZ, BC, ... between the vertices A to Z.
+	 */
+	private static List<Segment> createSegments() {
+		List<Segment> segments = new ArrayList<>();
+		for (char c = 'A'; c <= 'Z'; c++) {
+			for (char d = (char) (c + 1); d <= 'Z'; d++) {
+				segments.add(new Segment(new Vertex(c, new Vec2(c, 0)), 
+						new Vertex(d, new Vec2(d, 1))));
+			}
+		}
+		return segments;
+	}
+
+	@Test
+	public void relationsAreFoundAfterOthersAreRemoved() {
+		List<Segment> segments = createSegments();
+		final Segment first = segments.get(0);
+		FigureRelationStore store = new FigureRelationStore(new FigureIds());
+		List<FigureRelation> rels = new ArrayList<>();
+		// Enough relations of the first segment for them to be hashed
+		for (int i = 1; i < 200; i++) {
+			FigureRelation rel = new FigureRelation(FigureRelationType.CONGRUENT, first, 
+					segments.get(i));
+			assertTrue(store.add(rel));
+			rels.add(rel);
+		}
+
+		// Remove every third relation
+		for (int i = 0; i < rels.size(); i += 3) {
+			assertTrue(store.remove(rels.get(i)));
+		}
+		for (int i = 0; i < rels.size(); i++) {
+			final Segment other = segments.get(i + 1);
+			if (i % 3 == 0) {
+				assertNull(store.get(FigureRelationType.CONGRUENT, first, other));
+			} else {
+				assertTrue(rels.get(i) == store.get(FigureRelationType.CONGRUENT, first, other));
+				assertTrue(rels.get(i) == store.get(FigureRelationType.CONGRUENT, other, first));
+			}
+		}
+		assertEquals(rels.size() - 67, 
+				store.getFigureRelations(FigureRelationType.CONGRUENT, first).size());
+	}
+}
@@ -0,0 +1,119 @@
+package geometry.proofs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import geometry.Vec2;
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+
+public class ProblemWriterTest {
+
+	/**
+	 * Create the problem of two crossing segments AB and CD, whose vertical angles at their
+	 * (hidden) intersection E are congruent.
+	 */
+	private static Problem createCrossProblem() {
+		Problem problem = new Problem("cross");
+		problem.addFigure(new Segment(new Vertex('A', new Vec2(0, 0)), 
+				new Vertex('B', new Vec2(10, 10))));
+		problem.addFigure(new Segment(new Vertex('C', new Vec2(0, 10)), 
+				new Vertex('D', new Vec2(10, 0))));
+		problem.addGiven(new Problem.Statement(FigureRelationType.CONGRUENT, "AB", "CD"));
+		problem.setGoal(new Problem.Statement(FigureRelationType.CONGRUENT, "<AEC", "<BED"));
+		return problem;
+	}
+
+	/**
+	 * Create the problem of the isosceles triangle ABC, whose base BC is bisected by AD, so
+	 * that its base angles are congruent.
+	 */
+	private static Problem createIsoscelesProblem() {
+		Vertex a = new Vertex('A', new Vec2(0, 10));
+		Vertex b = new Vertex('B', new Vec2(-5, 0));
+		Vertex c = new Vertex('C', new Vec2(5, 0));
+		Problem problem = new Problem("isosceles");
+		problem.addFigure(new Triangle(a, b, c));
+		problem.addFigure(new Segment(a, new Vertex('D', new Vec2(0, 0))));
+		problem.addGiven(new Problem.Statement(FigureRelationType.CONGRUENT, "AB", "AC"));
+		problem.addGiven(new Problem.Statement(FigureRelationType.BISECTS, "AD", "BC"));
+		problem.setGoal(new Problem.Statement(FigureRelationType.CONGRUENT, "<ABD", "<ACD"));
+		return problem;
+	}
+
+	/**
+	 * Solve the given problem, and save it along with its points and derived relations.
+	 */
+	private static String solveAndWrite(Problem problem) throws IOException {
+		Diagram diagram = Preprocessor.generateDiagram(problem);
+		ProofSolver solver = new ProofSolver(diagram);
+		solver.setVerbose(false);
+		assertTrue(solver.solve());
+
+		Problem solved = new Problem(problem.getName());
+		solved.addVertices(diagram);
+		for (Figure fig : problem.getFigures()) {
+			solved.addFigure(fig);
+		}
+		for (Problem.Statement given : problem.getGivens()) {
+			solved.addGiven(given);
+		}
+		solved.setGoal(problem.getGoal());
+		solved.addRelations(diagram.getFigureRelations());
+
+		StringWriter text = new StringWriter();
+		try (ProblemWriter writer = new ProblemWriter(text)) {
+			writer.write(solved);
+		}
+		return text.toString();
+	}
+
+	private static Problem read(String text) throws IOException {
+		try (ProblemReader reader = new ProblemReader(new StringReader(text), "test")) {
+			return reader.next();
+		}
+	}
+
+	@Test
+	public void hiddenVerticesAreWritten() throws IOException {
+		Problem problem = read(solveAndWrite(createCrossProblem()));
+
+		boolean found = false;
+		for (Vertex vertex : problem.getVertices()) {
+			if (vertex.getNameChar() == 'E') {
+				assertEquals(new Vec2(5, 5), vertex.getCenter());
+				found = true;
+			}
+		}
+		assertTrue(found);
+	}
+
+	@Test
+	public void relationsAreRestoredWithTheirParents() throws IOException {
+		final String text = solveAndWrite(createIsoscelesProblem());
+		Problem problem = read(text);
+
+		// The goal is known before solving, and can be traced back to the given
+		Diagram diagram = Preprocessor.generateDiagram(problem);
+		FigureRelation goal = diagram.getProofGoal();
+		FigureRelation rel = diagram.getFigureRelation(goal.getRelationType(), 
+				goal.getFigure0(), goal.getFigure1());
+		assertNotNull(rel);
+		assertTrue(!rel.getParents().isEmpty());
+		for (FigureRelation step : Traceback.getTraceback(rel)) {
+			assertTrue(step == diagram.getFigureRelation(step.getRelationType(), 
+					step.getFigure0(), step.getFigure1()));
+		}
+
+		// Solving the restored problem derives nothing new
+		assertEquals(text, solveAndWrite(problem));
+	}
+}
@@ -0,0 +1,195 @@
+package geometry.proofs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import geometry.Vec2;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+import geometry.shapes.VertexShape;
+
+public class ProofSolveRequestManagerTest {
+
+	// The number of triangles that share the vertex A
+	private static final int FAN_SIZE = 8;
+
+	private ProofSolveRequestManager manager = new ProofSolveRequestManager(Runnable::run);
+
+	@After
+	public void shutdown() {
+		manager.shutdown();
+	}
+
+	/**
+	 * Create triangles ABC, ACD, ... that share the vertex A, as they would be drawn on the
+	 * canvas.
+	 */
+	private static List<Triangle> createFan() {
+		List<Triangle> figures = new ArrayList<>();
+		for (int i = 0; i < FAN_SIZE; i++) {
+			figures.add(new Triangle(new Vertex('A', new Vec2(FAN_SIZE, 10)),
+					new Vertex((char) ('B' + i), new Vec2(i * 2, 0)),
+					new Vertex((char) ('B' + i + 1), new Vec2(i * 2 + 2, 0))));
+		}
+		return figures;
+	}
+
+	/**
+	 * Create the problem of the given fan: the outer sides are congruent, and one of the
+	 * base angles is right, so the other base angle is congruent to it.
+	 */
+	private static Problem createProblem(List<Triangle> figures) {
+		final char last = (char) ('B' + FAN_SIZE);
+		Problem problem = new Problem("fan");
+		for (Triangle fig : figures) {
+			problem.addFigure(fig);
+		}
+		problem.addGiven(new Problem.Statement(FigureRelationType.CONGRUENT, "AB", "A" + last));
+		problem.addGiven(new Problem.Statement(FigureRelationType.RIGHT, "<ABC", null));
+		problem.setGoal(new Problem.Statement(FigureRelationType.CONGRUENT, "<ABC", 
+				"<A" + last + (char) (last - 1)));
+		return problem;
+	}
+
+	/**
+	 * Rename and move every vertex of the given figures, as a user editing the canvas would.
+	 */
+	private static void edit(List<Triangle> figures, int step) {
+		for (VertexShape fig : figures) {
+			for (int i = 0; i < fig.getVertexCount(); i++) {
+				fig.setVertexName(i, (char) ('A' + (fig.getVertexName(i) - 'A' + 1) % 26));
+				fig.setVertexLoc(i, new Vec2(step % 50, -step % 50));
+			}
+		}
+	}
+
+	@Test
+	public void problemIsNotAffectedByEditedFigures() {
+		List<Triangle> figures = createFan();
+		Problem problem = createProblem(figures);
+		edit(figures, 1);
+
+		assertEquals("ABC", problem.getFigures().get(0).getName());
+		assertEquals(new Vec2(0, 0), ((Triangle) problem.getFigures().get(0)).getVertexLoc(1));
+	}
+
+	@Test
+	public void figuresCanBeEditedWhileTheProofIsSolved() throws Exception {
+		List<Triangle> figures = createFan();
+		Diagram diagram = Preprocessor.generateDiagram(createProblem(figures));
+		CompletableFuture<ProofSolver> future = manager.requestSolveProof(
+				new ProofSolveRequestManager.Request(diagram) {
+			@Override
+			public void onRequestCompleted(ProofSolver solver) {
+			}
+		});
+
+		// Keep editing the figures until the proof is solved
+		int step = 0;
+		while (!future.isDone()) {
+			edit(figures, ++step);
+		}
+		ProofSolver solver = future.get(10, TimeUnit.SECONDS);
+		assertEquals(ProofSolver.Outcome.PROVEN, solver.getOutcome());
+	}
+
+	@Test
+	public void errorsCompleteTheRequest() throws Exception {
+		Diagram diagram = Preprocessor.generateDiagram(createProblem(createFan()));
+		CompletableFuture<Throwable> failure = new CompletableFuture<>();
+		CompletableFuture<ProofSolver> future = manager.requestSolveProof(
+				new ProofSolveRequestManager.Request(diagram) {
+			@Override
+			public void configureSolver(ProofSolver solver) {
+				throw new StackOverflowError();
+			}
+
+			@Override
+			public void onRequestCompleted(ProofSolver solver) {
+			}
+
+			@Override
+			public void onRequestFailed(Throwable e) {
+				failure.complete(e);
+			}
+		});
+
+		assertTrue(failure.get(10, TimeUnit.SECONDS) instanceof StackOverflowError);
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+	@Test
+	public void problemIsSolvedOnTheWorkerThread() throws Exception {
+		CompletableFuture<Thread> configuredOn = new CompletableFuture<>();
+		CompletableFuture<ProofSolver> future = manager.requestSolveProof(
+				new ProofSolveRequestManager.Request(createProblem(createFan()), null) {
+			@Override
+			public void configureSolver(ProofSolver solver) {
+				configuredOn.complete(Thread.currentThread());
+			}
+
+			@Override
+			public void onRequestCompleted(ProofSolver solver) {
+			}
+		});
+
+		assertEquals(ProofSolver.Outcome.PROVEN, 
+				future.get(10, TimeUnit.SECONDS).getOutcome());
+		assertTrue(configuredOn.get() != Thread.currentThread());
+	}
+
+	@Test
+	public void invalidProblemFailsTheRequest() throws Exception {
+		Problem problem = createProblem(createFan());
+		problem.addGiven(new Problem.Statement(FigureRelationType.CONGRUENT, "AB", "YZ"));
+		CompletableFuture<Throwable> failure = new CompletableFuture<>();
+		manager.requestSolveProof(new ProofSolveRequestManager.Request(problem, null) {
+			@Override
+			public void onRequestCompleted(ProofSolver solver) {
+			}
+
+			@Override
+			public void onRequestFailed(Throwable e) {
+				failure.complete(e);
+			}
+		});
+
+		assertTrue(failure.get(10, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void shutdownCancelsTheRunningRequest() throws Exception {
+		Diagram diagram = Preprocessor.generateDiagram(createProblem(createFan()));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch shutDown = new CountDownLatch(1);
+		CompletableFuture<ProofSolver> future = manager.requestSolveProof(
+				new ProofSolveRequestManager.Request(diagram) {
+			@Override
+			public void configureSolver(ProofSolver solver) {
+				started.countDown();
+				try {
+					shutDown.await();
+				} catch (InterruptedException e) {
+				}
+			}
+
+			@Override
+			public void onRequestCompleted(ProofSolver solver) {
+			}
+		});
+
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		manager.shutdown();
+		shutDown.countDown();
+		assertTrue(future.isCancelled());
+	}
+}
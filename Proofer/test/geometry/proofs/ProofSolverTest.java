@@ -0,0 +1,52 @@
+package geometry.proofs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import geometry.Vec2;
+import geometry.shapes.Segment;
+import geometry.shapes.Triangle;
+import geometry.shapes.Vertex;
+
+public class ProofSolverTest {
+
+	/**
+	 * Create the diagram of the isosceles triangle ABC, whose base BC is bisected by AD, so
+	 * that its base angles are congruent.
+	 */
+	private static Diagram createIsoscelesDiagram() {
+		Vertex a = new Vertex('A', new Vec2(0, 10));
+		Problem problem = new Problem("isosceles");
+		problem.addFigure(new Triangle(a, new Vertex('B', new Vec2(-5, 0)), 
+				new Vertex('C', new Vec2(5, 0))));
+		problem.addFigure(new Segment(a, new Vertex('D', new Vec2(0, 0))));
+		problem.addGiven(new Problem.Statement(FigureRelationType.CONGRUENT, "AB", "AC"));
+		problem.addGiven(new Problem.Statement(FigureRelationType.BISECTS, "AD", "BC"));
+		problem.setGoal(new Problem.Statement(FigureRelationType.CONGRUENT, "<ABD", "<ACD"));
+		return Preprocessor.generateDiagram(problem);
+	}
+
+	@Test
+	public void memoryBudgetStopsSolving() {
+		ProofSolver solver = new ProofSolver(createIsoscelesDiagram());
+		solver.setVerbose(false);
+		solver.setMaxHeapBytes(1);
+		solver.solve();
+
+		assertEquals(ProofSolver.Outcome.INCONCLUSIVE, solver.getOutcome());
+		assertEquals(ProofSolver.Budget.MEMORY, solver.getStatistics().getExhaustedBudget());
+	}
+
+	@Test
+	public void memoryBudgetAboveTheHeapDoesNotStopSolving() {
+		ProofSolver solver = new ProofSolver(createIsoscelesDiagram());
+		solver.setVerbose(false);
+		solver.setMaxHeapBytes(Runtime.getRuntime().maxMemory());
+		solver.solve();
+
+		assertEquals(ProofSolver.Outcome.PROVEN, solver.getOutcome());
+		assertNull(solver.getStatistics().getExhaustedBudget());
+	}
+}